@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+/** Runs many commands in one process against one loaded
+ *  GitletControlSystem. Commands are read one per line, written as
+ *  they would be typed: words are separated by blanks and a word in
+ *  double quotes may hold blanks, with \" and \\ for a quote and a
+ *  backslash. Blank lines and lines starting with # are skipped.
+ *
+ *  Instead of writing GitletObject after every command, the state
+ *  is written every CHECKPOINT commands (or as often as the
+ *  batch.checkpoint setting says), at the end, and by each commit,
+ *  which empties the stage only as its ref is written. A command that
+ *  fails, whatever it fails with, reports "[N] failed", N being its
+ *  line number, after its output, and does not stop the batch. The
+ *  state it changed before failing is discarded, so the next command
+ *  runs against the state the failed one started from. The state is
+ *  written at the end even if reading the commands fails.
+ *  @author Brandon Byrne
+ */
+class Batch {
+    /** default number of commands run between checkpoints. */
+    static final int CHECKPOINT = 1000;
+    /** setting overriding CHECKPOINT. */
+    static final String CHECKPOINT_KEY = "batch.checkpoint";
+
+    /** Usage: gitlet batch [FILE]. ARGS[1], if present, is the file
+     * commands are read from; otherwise they come from the standard
+     * input. */
+    static void main(String... args) throws IOException {
+        if (args.length == 2 && !new File(args[1]).isFile()) {
+            System.out.println("File does not exist.");
+            return;
+        }
+        InputStream in = args.length == 2
+            ? new FileInputStream(new File(args[1])) : System.in;
+        GitletControlSystem g;
+        try {
+            g = Main.load();
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try (BufferedReader r = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            new Batch(g).run(r);
+        }
+    }
+
+    /** a batch run against G. */
+    Batch(GitletControlSystem g) {
+        _g = g;
+        try {
+            _every = Math.max(1, Integer.parseInt(
+                    g.config().get(CHECKPOINT_KEY, "" + CHECKPOINT)));
+        } catch (NumberFormatException excp) {
+            _every = CHECKPOINT;
+        }
+    }
+
+    /** runs every command read from IN. */
+    void run(BufferedReader in) throws IOException {
+        _g.deferSaves(true);
+        int line = 0, ran = 0, failed = 0;
+        try {
+            for (String s = in.readLine(); s != null; s = in.readLine()) {
+                line += 1;
+                if (s.trim().startsWith("#")) {
+                    continue;
+                }
+                String[] args;
+                try {
+                    args = split(s);
+                } catch (GitletException e) {
+                    System.out.println(e.getMessage());
+                    System.out.printf("[%d] failed%n", line);
+                    ran += 1;
+                    failed += 1;
+                    continue;
+                }
+                if (args.length == 0) {
+                    continue;
+                }
+                ran += 1;
+                byte[] state = Utils.serialize(_g);
+                Map<String, byte[]> changes = _g.journal().pending();
+                try {
+                    _g = Main.run(args, _g);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println(e.getMessage());
+                    System.out.printf("[%d] failed%n", line);
+                    failed += 1;
+                    _g = Utils.deserialize(state, GitletControlSystem.class);
+                    _g.journal().restore(changes);
+                    _g.deferSaves(true);
+                }
+                if (ran % _every == 0) {
+                    _g.checkpoint();
+                }
+            }
+        } finally {
+            _g.checkpoint();
+            _g.deferSaves(false);
+        }
+        System.out.printf("Ran %d commands, %d failed.%n", ran, failed);
+    }
+
+    /** returns the words of the command line S. */
+    static String[] split(String s) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder w = null;
+        boolean quoted = false;
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < s.length()) {
+                    i += 1;
+                    w.append(s.charAt(i));
+                } else {
+                    w.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (w != null) {
+                    words.add(w.toString());
+                    w = null;
+                }
+            } else {
+                if (w == null) {
+                    w = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    w.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            throw new GitletException("Unterminated quote.");
+        }
+        if (w != null) {
+            words.add(w.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** the state commands run against. */
+    private GitletControlSystem _g;
+    /** number of commands between checkpoints. */
+    private int _every;
+}
@@ -1,43 +1,126 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 
-/** Represents a Blob.
+/** Represents a Blob. A blob never holds its file's contents in
+ *  memory: they are streamed from the working file or the stored
+ *  object through a fixed-size buffer whenever they are needed.
  *  @author Brandon Byrne
  */
 public class Blob implements Serializable {
+    /** size of the buffer contents are streamed through. */
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** makes blob representing
-     * F named NAME.
+     * F named NAME, hashing F in one streaming pass.
      */
     Blob(File f, String name) {
         _file = f;
-        _contents = Utils.readContentsAsString(f);
         _name = name;
-        _sha1 = Utils.sha1(_contents + name);
+        _sha1 = hash(f, name);
+    }
+    /** makes a blob read back from storage for the file NAME
+     * holding CONTENTS, whose hash is SHA1. */
+    Blob(String name, String contents, String sha1) {
+        _name = name;
+        _contents = contents;
+        _sha1 = sha1;
+    }
+    /** makes a blob for the file NAME with hash SHA1 whose
+     * contents are kept in STORE. */
+    Blob(String name, String sha1, ObjectStore store) {
+        _name = name;
+        _sha1 = sha1;
+        _store = store;
+    }
+    /** returns the sha1 of the contents of F followed by NAME,
+     * reading F through a fixed-size buffer. */
+    static String hash(File f, String name) {
+        MessageDigest md = Utils.sha1Digest();
+        byte[] buf = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(f)) {
+            for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        md.update(name.getBytes(StandardCharsets.UTF_8));
+        return ObjectCodec.bytesToHex(md.digest());
+    }
+    /** opens a stream over the contents this blob stores.
+     * @return InputStream */
+    public InputStream open() throws IOException {
+        if (_contents != null) {
+            return new ByteArrayInputStream(
+                    _contents.getBytes(StandardCharsets.UTF_8));
+        }
+        if (_store != null) {
+            return ObjectCodec.openBlob(_sha1, _store);
+        }
+        return new FileInputStream(_file);
+    }
+    /** writes the contents this blob stores to DEST, replacing it,
+     * without holding them in memory. */
+    public void copyTo(File dest) {
+        try (InputStream in = open()) {
+            Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
     /** gets the contents that this blobs stores.
      * @return contents of file when blob was made.*/
     public String contents() {
-        return _contents;
+        if (_contents != null) {
+            return _contents;
+        }
+        try (InputStream in = open()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
     /** gets sha1 for the file of this blob.
      * @return sha1 of contents of file.*/
     public String sha1() {
         return _sha1;
     }
+    /** returns an estimate of the bytes of memory this blob takes: its
+     * name and id, and its contents if it holds them. A stored blob
+     * streams its contents and does not hold them. */
+    long weight() {
+        long chars = _name.length() + _sha1.length();
+        if (_contents != null) {
+            chars += _contents.length();
+        }
+        return 2 * chars;
+    }
     /** gets name of the file this blob represents.
      * @return names of file. */
     public String name() {
         return _name;
     }
     /** the file this blob represents.*/
-    private File _file;
+    private transient File _file;
+    /** the store this blob's contents are kept in. */
+    private transient ObjectStore _store;
     /** name of file this file represents. */
     private String _name;
     /** sha1 code of this file. */
     private String _sha1;
-    /** contents of file as a string. */
+    /** contents of file as a string, only set for blobs written by
+     * earlier versions. */
     private String _contents;
-
+    /** pinned so blobs written by earlier versions still load. */
+    private static final long serialVersionUID = -1837087626065179656L;
 }
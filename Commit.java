@@ -4,27 +4,35 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Formatter;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
 
 /** Represents the Gitlet version-control system.
  *  @author Brandon Byrne
  */
 public class Commit implements Serializable {
+    /** estimated bytes of memory a commit takes beyond its message and
+     * files: its ids, branch name and calendars. */
+    static final int COMMIT_WEIGHT = 1024;
+    /** estimated bytes of memory each file of a commit takes once read,
+     * beyond its name: its blob id and its map and list entries. */
+    static final int FILE_WEIGHT = 256;
     /** creates commit with MSG, PARENT, PARENT2
      *BRANCH, and G.
      */
     Commit(String msg, Commit parent, Commit parent2,
            String branch, GitletControlSystem G) throws IOException {
-        if (Utils.plainFilenamesIn(G.stage()).size() == 0
-            && Utils.plainFilenamesIn(G.removal()).size() == 0
-            && parent != null) {
+        List<String> staged = Utils.plainFilenamesUnder(G.stage());
+        List<String> removed = Utils.plainFilenamesUnder(G.removal());
+        if (staged.size() == 0 && removed.size() == 0 && parent != null) {
             GitletException g = new GitletException("No"
                     + " changes added to the commit.");
-            System.out.println(g.getMessage());
-            return;
+            throw g;
         }
         _path = G.path();
         _stage = G.stage();
@@ -41,52 +49,145 @@ public class Commit implements Serializable {
         } else {
             _parent = null;
         }
-        _tracked = new ArrayList<String>();
-        _blobs = new ArrayList<String>();
-        _fileToSha = new HashMap<String, String>();
-        _ShaToFile = new HashMap<String, String>();
+        _store = G.blobStore();
         _time = new GregorianCalendar();
+        TreeMap<String, String> changes = new TreeMap<>();
         if (parent == null) {
             _time = _begining;
-            _sha1 = Utils.sha1(Utils.serialize(this));
-            return;
+        } else {
+            for (String s : removed) {
+                changes.put(s, null);
+            }
+            Compression z = G.compression();
+            List<Blob> blobs = Workers.map(staged, G.config().threads(),
+                s -> ObjectCodec.writeBlob(_store,
+                        Utils.join(G.stage(), s), s, z));
+            for (Blob b : blobs) {
+                changes.put(b.name(), b.sha1());
+            }
+        }
+        String base = null;
+        if (parent != null && parent.tree() != null) {
+            base = parent.tree();
+        } else if (parent != null) {
+            base = Tree.edit(_store, null, parent.fileToSha(),
+                    G.compression());
+        }
+        _tree = Tree.edit(_store, base, changes, G.compression());
+        _sha1 = Utils.sha1(ObjectCodec.encodeCommit(this));
+    }
+    /** creates a commit read back from storage with MSG, PARENT,
+     * PARENT2, BRANCH, TIME in milliseconds since the epoch and
+     * FILES mapping each tracked file name to its blob's sha1.
+     * SHA1 is the commit's id, or null to compute it from the
+     * commit's encoding. */
+    Commit(String msg, String parent, String parent2, String branch,
+           long time, Map<String, String> files, String sha1) {
+        _msg = msg;
+        _parent = parent;
+        _parent2 = parent2;
+        _branch = branch;
+        _time = new GregorianCalendar();
+        _time.setTimeInMillis(time);
+        setFiles(files);
+        if (sha1 == null) {
+            sha1 = Utils.sha1(ObjectCodec.encodeCommit(this));
+        }
+        _sha1 = sha1;
+    }
+    /** creates a commit read back from storage with MSG, PARENT,
+     * PARENT2, BRANCH, TIME in milliseconds since the epoch and the
+     * root tree TREE. SHA1 is the commit's id, or null to compute it
+     * from the commit's encoding. Its files are read from the tree
+     * the first time they are asked for. */
+    Commit(String msg, String parent, String parent2, String branch,
+           long time, String tree, String sha1) {
+        _msg = msg;
+        _parent = parent;
+        _parent2 = parent2;
+        _branch = branch;
+        _time = new GregorianCalendar();
+        _time.setTimeInMillis(time);
+        _tree = tree;
+        if (sha1 == null) {
+            sha1 = Utils.sha1(ObjectCodec.encodeCommit(this));
+        }
+        _sha1 = sha1;
+    }
+    /** makes this commit read its tree from STORE and pass LOADED the
+     * estimated bytes its files take once it has read them.
+     * @return this commit. */
+    Commit attach(ObjectStore store, LongConsumer loaded) {
+        _store = store;
+        _loaded = loaded;
+        return this;
+    }
+    /** returns an estimate of the bytes of memory this commit takes:
+     * its ids, dates and message, and its files once they are read. */
+    long weight() {
+        return COMMIT_WEIGHT + 2L * _msg.length() + filesWeight();
+    }
+    /** returns an estimate of the bytes of memory the files of this
+     * commit take, or 0 if they have not been read. */
+    private long filesWeight() {
+        if (_fileToSha == null) {
+            return 0;
         }
-        for (String s : Utils.plainFilenamesIn(_stage)) {
-            File f = Utils.join(G.stage(), s);
-            Blob b = new Blob(f, s);
-            _blobs.add(b.sha1());
-            f.delete();
-            _fileToSha.put(s, b.sha1());
-            _ShaToFile.put(b.sha1(), s);
-            G.addBlob(b);
-            _tracked.add(s);
+        long weight = (long) FILE_WEIGHT * _fileToSha.size();
+        for (String name : _tracked) {
+            weight += 2L * name.length();
         }
-        for (String s : parent.tracked()) {
-            if (!tracked().contains(s)
-                    && !Utils.plainFilenamesIn(g().removal()).contains(s)) {
-                _tracked.add(s);
-                String sha = parent.fileToSha().get(s);
-                _blobs.add(sha);
-                _fileToSha.put(s, sha);
-                _ShaToFile.put(sha, s);
+        return weight;
+    }
+    /** makes FILES, mapping each tracked file name to its blob's
+     * sha1, the files of this commit. */
+    private void setFiles(Map<String, String> files) {
+        _tracked = new ArrayList<String>();
+        _blobs = new ArrayList<String>();
+        _fileToSha = new HashMap<String, String>();
+        _ShaToFile = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            _tracked.add(e.getKey());
+            _blobs.add(e.getValue());
+            _fileToSha.put(e.getKey(), e.getValue());
+            _ShaToFile.put(e.getValue(), e.getKey());
+        }
+    }
+    /** reads the files of this commit from its tree if that has not
+     * been done yet. */
+    private void loadFiles() {
+        if (_fileToSha == null) {
+            if (_store == null) {
+                throw Utils.error("Internal error: commit %s has no store.",
+                        _sha1);
+            }
+            TreeMap<String, String> files = new TreeMap<>();
+            Tree.flatten(_store, _tree, "", files);
+            setFiles(files);
+            if (_loaded != null) {
+                _loaded.accept(filesWeight());
             }
         }
-        _sha1 = Utils.sha1(Utils.serialize(this));
     }
     /** reperesents commit as String for log.
      * @return String*/
     public String toString() {
-        Formatter f = new Formatter();
+        return toString(sha1());
+    }
+    /** represents commit as String for log, showing its id as ID,
+     * which may be abbreviated.
+     * @return String */
+    public String toString(String id) {
         if (_parent2 == null) {
             String r = "===\n"
-                       + "commit " + sha1() + "\n"
+                       + "commit " + id + "\n"
                        + "Date: " + String.format("%1$ta %1$tb %1$te"
                        + " %1$tH:%1$tM:%1$tS %1$tY", _time) + " -0800\n"
                        + _msg + "\n\n";
             return r;
         }
         String r = "===\n"
-                + "commit " + sha1() + "\n"
+                + "commit " + id + "\n"
                 + "Merge: " + parent().subSequence(0, 7) + " "
                 + parent2().subSequence(0, 7) + "\n"
                 + "Date: " + String.format("%1$ta %1$tb %1$te"
@@ -94,29 +195,42 @@ public class Commit implements Serializable {
                 + _msg + "\n\n";
         return r;
     }
+    /** returns time of creation in milliseconds since the epoch. */
+    public long time() {
+        return _time.getTimeInMillis();
+    }
     /** returns this commit's message. */
     public String msg() {
         return _msg;
     }
     /** returns hashmap fileToSha. */
     public HashMap<String, String> shaToFile() {
+        loadFiles();
         return _ShaToFile;
     }
     /** returns hashmap fileToSha.
      * @return HashMap */
     public HashMap<String, String> fileToSha() {
+        loadFiles();
         return _fileToSha;
     }
     /** returns list of tracked files.
      * @return ArrayList*/
     public ArrayList<String> tracked() {
+        loadFiles();
         return _tracked;
     }
     /** returns _blobs of this commit.
      * @return ArrayList<String> */
     public ArrayList<String> blobs() {
+        loadFiles();
         return _blobs;
     }
+    /** returns the sha1 of this commit's root tree, or null if it
+     * was written with a flat map of its files. */
+    public String tree() {
+        return _tree;
+    }
     /** get this branch's gitletcontrolSYstem.
      * @return gitletcontrolSystem*/
     public GitletControlSystem g() {
@@ -158,9 +272,15 @@ public class Commit implements Serializable {
     /** list of names of sha1 of files this commit is tracking. */
     private ArrayList<String> _tracked;
     /** path to .gitlet. */
-    private File _path;
+    private transient File _path;
     /** the staging area. */
-    private File _stage;
+    private transient File _stage;
+    /** sha1 of the root tree, or null for a commit with a flat map. */
+    private String _tree;
+    /** store this commit's trees are read from. */
+    private transient ObjectStore _store;
+    /** told the estimated bytes of the files once they are read. */
+    private transient LongConsumer _loaded;
     /** a hash map of a name of a file and the sha1 of its
      * contents when this commit was made.
      */
@@ -168,7 +288,7 @@ public class Commit implements Serializable {
     /** a haah map from sha1 codes to file names. */
     private HashMap<String, String> _ShaToFile;
     /** returns this commit's gitletControlSystem. */
-    private GitletControlSystem _g;
+    private transient GitletControlSystem _g;
     /** sha1 of this commit. */
     private String _sha1;
     /** branch this commit is on. */
@@ -180,4 +300,6 @@ public class Commit implements Serializable {
      */
     private final GregorianCalendar _begining =
             new GregorianCalendar(1970, Calendar.JANUARY, 1, 0, 0, 0);
+    /** pinned so commits written by earlier versions still load. */
+    private static final long serialVersionUID = 3197389096480014030L;
 }
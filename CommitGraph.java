@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** The shape of the commit history: for every commit, the positions
+ *  of its parents and its generation number, one more than the
+ *  largest generation of its parents (a root commit has generation
+ *  1). Questions about ancestry are answered from this alone, without
+ *  reading any commit.
+ *
+ *  The graph is kept in .gitlet/commitGraph as an append-only list
+ *  of fixed-size records: the raw sha1 of a commit, the positions of
+ *  its first and second parents in the list (-1 for none) and its
+ *  generation. A commit is always recorded after its parents. A last
+ *  record cut short is cut off when the graph is loaded, and the
+ *  commit it was for added again.
+ *  @author Brandon Byrne
+ */
+class CommitGraph {
+    /** length of one record of the graph file. */
+    static final int RECORD = ObjectCodec.HASH_BYTES + 12;
+    /** marks a commit reached from the first commit of a query. */
+    private static final int ONE = 1;
+    /** marks a commit reached from the second commit of a query. */
+    private static final int TWO = 2;
+
+    /** creates an empty graph persisted to FILE. */
+    private CommitGraph(File file) {
+        _file = file;
+        _positions = new HashMap<>();
+        _ids = new ArrayList<>();
+        _parents = new int[2 * 16];
+        _generations = new int[16];
+    }
+
+    /** loads the graph stored in FILE, then adds any commit in INDEX
+     * it is missing, reading those with COMMITS.
+     * @return CommitGraph */
+    static CommitGraph load(File file, CommitIndex index,
+                            Function<String, Commit> commits) {
+        CommitGraph graph = new CommitGraph(file);
+        if (file.exists()) {
+            try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+                f.setLength(f.length() - f.length() % RECORD);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                byte[] id = new byte[ObjectCodec.HASH_BYTES];
+                for (long n = file.length() / RECORD; n > 0; n -= 1) {
+                    in.readFully(id);
+                    graph.put(ObjectCodec.bytesToHex(id), in.readInt(),
+                            in.readInt(), in.readInt());
+                }
+            } catch (IOException excp) {
+                file.delete();
+                return load(file, index, commits);
+            }
+        }
+        for (String id : index.ids()) {
+            graph.add(id, commits);
+        }
+        return graph;
+    }
+
+    /** records the commit ID, and before it any of its ancestors that
+     * are not yet recorded, reading them with COMMITS. */
+    void add(String id, Function<String, Commit> commits) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String x = work.peek();
+            if (x == null || _positions.containsKey(x)) {
+                work.pop();
+                continue;
+            }
+            Commit c = commits.apply(x);
+            if (c == null) {
+                work.pop();
+                continue;
+            }
+            String p1 = c.parent(), p2 = c.parent2();
+            boolean ready = true;
+            for (String p : new String[] {p1, p2}) {
+                if (p != null && !_positions.containsKey(p)
+                        && commits.apply(p) != null) {
+                    work.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                work.pop();
+                append(x, position(p1), position(p2));
+            }
+        }
+    }
+
+    /** returns the generation number of the commit ID, or 0 if it is
+     * not in the graph. */
+    int generation(String id) {
+        int k = position(id);
+        return k < 0 ? 0 : _generations[k];
+    }
+
+    /** returns true if the commit A is B or one of its ancestors. */
+    boolean isAncestor(String a, String b) {
+        int x = position(a), y = position(b);
+        if (x < 0 || y < 0) {
+            return false;
+        }
+        int cutoff = _generations[x];
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(y);
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == x) {
+                return true;
+            }
+            if (_generations[k] <= cutoff || !seen.add(k)) {
+                continue;
+            }
+            for (int p = 0; p < 2; p += 1) {
+                if (_parents[2 * k + p] >= 0) {
+                    work.push(_parents[2 * k + p]);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** returns a best common ancestor of the commits A and B: one
+     * that is not an ancestor of any other common ancestor. Commits
+     * are visited in decreasing order of generation, so every path
+     * from A or B to a commit has been seen before the commit is, and
+     * the first commit reached from both is the answer.
+     * @return sha1, or null if A and B share no history. */
+    String mergeBase(String a, String b) {
+        int x = position(a), y = position(b);
+        if (x < 0 || y < 0) {
+            return null;
+        }
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((i, j) ->
+            _generations[i] != _generations[j]
+            ? Integer.compare(_generations[j], _generations[i])
+            : Integer.compare(j, i));
+        marks.put(x, ONE);
+        marks.merge(y, TWO, (m, n) -> m | n);
+        queue.add(x);
+        queue.add(y);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            int m = marks.get(k);
+            if (m == (ONE | TWO)) {
+                return _ids.get(k);
+            }
+            for (int p = 0; p < 2; p += 1) {
+                int q = _parents[2 * k + p];
+                if (q < 0) {
+                    continue;
+                }
+                int old = marks.getOrDefault(q, 0);
+                if ((old | m) != old) {
+                    marks.put(q, old | m);
+                    queue.add(q);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** returns the number of commits in the graph. */
+    int size() {
+        return _ids.size();
+    }
+
+    /** returns the sha1 of the commit at position K. */
+    String id(int k) {
+        return _ids.get(k);
+    }
+
+    /** returns a bitmap over the positions of the graph with a bit set
+     * for each commit reachable from one of TIPS, found in one pass
+     * over the parents without reading any commit. */
+    BitSet reachable(Iterable<String> tips) {
+        BitSet marked = new BitSet(_ids.size());
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        for (String tip : tips) {
+            int k = position(tip);
+            if (k >= 0) {
+                work.push(k);
+            }
+        }
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (marked.get(k)) {
+                continue;
+            }
+            marked.set(k);
+            for (int p = 0; p < 2; p += 1) {
+                int q = _parents[2 * k + p];
+                if (q >= 0 && !marked.get(q)) {
+                    work.push(q);
+                }
+            }
+        }
+        return marked;
+    }
+
+    /** returns the position of the commit ID, or -1. */
+    private int position(String id) {
+        Integer k = id == null ? null : _positions.get(id);
+        return k == null ? -1 : k;
+    }
+
+    /** records the commit ID with parents at positions P1 and P2 and
+     * appends the record to the graph file. */
+    private void append(String id, int p1, int p2) {
+        int gen = 1 + Math.max(p1 < 0 ? 0 : _generations[p1],
+                p2 < 0 ? 0 : _generations[p2]);
+        put(id, p1, p2, gen);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            out.write(ObjectCodec.hexToBytes(id));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeInt(gen);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** adds ID with parents at P1 and P2 and generation GEN to the
+     * in-memory graph. */
+    private void put(String id, int p1, int p2, int gen) {
+        int k = _ids.size();
+        if (k == _generations.length) {
+            _generations = Arrays.copyOf(_generations, 2 * k);
+            _parents = Arrays.copyOf(_parents, 4 * k);
+        }
+        _ids.add(id);
+        _positions.put(id, k);
+        _parents[2 * k] = p1;
+        _parents[2 * k + 1] = p2;
+        _generations[k] = gen;
+    }
+
+    /** file the graph is persisted to. */
+    private final File _file;
+    /** position of each commit in the graph by sha1. */
+    private final HashMap<String, Integer> _positions;
+    /** sha1 of the commit at each position. */
+    private final ArrayList<String> _ids;
+    /** positions of the first and second parents of the commit at
+     * position K at 2K and 2K + 1. */
+    private int[] _parents;
+    /** generation of the commit at each position. */
+    private int[] _generations;
+}
@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/** Maps the sha1 of every commit to the file it is stored in.
+ *  The index is kept on disk as an append-only list of
+ *  (sha1, location) records, so adding a commit costs one small
+ *  append. Exact lookups use a hash map; abbreviated ids are
+ *  resolved, and ambiguous ones reported, by searching a sorted set
+ *  of every known sha1.
+ *  @author Brandon Byrne
+ */
+class CommitIndex {
+    /** fewest characters an abbreviated id is shown with. */
+    static final int MIN_ABBREV = 4;
+
+    /** creates an empty index persisted to FILE. */
+    private CommitIndex(File file) {
+        _file = file;
+        _locations = new HashMap<>();
+        _sorted = new TreeSet<>();
+    }
+
+    /** loads the index stored in FILE, rebuilding it from the
+     * commit files in COMMITS and the commits in PACKS if FILE does
+     * not exist or its last record was cut short.
+     * @return CommitIndex */
+    static CommitIndex load(File file, File commits, Packs packs) {
+        if (!file.exists()) {
+            return rebuild(file, commits, packs);
+        }
+        CommitIndex index = new CommitIndex(file);
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(file)))) {
+            while (in.available() > 0) {
+                index.put(in.readUTF(), in.readUTF());
+            }
+        } catch (IOException excp) {
+            return rebuild(file, commits, packs);
+        }
+        return index;
+    }
+
+    /** discards FILE and rebuilds it by reading every commit
+     * file in COMMITS and every commit in PACKS. A packed commit is
+     * indexed under its sha1, the name a loose copy would have.
+     * @return CommitIndex */
+    static CommitIndex rebuild(File file, File commits, Packs packs) {
+        CommitIndex index = new CommitIndex(file);
+        file.delete();
+        List<String> names = Utils.plainFilenamesIn(commits);
+        if (names != null) {
+            for (String s : names) {
+                Commit c = ObjectCodec.readCommit(Utils.join(commits, s));
+                index.add(c.sha1(), s);
+            }
+        }
+        for (PackFile p : packs.list()) {
+            for (String id : p.ids()) {
+                byte[] data = Compression.decompress(p.read(id));
+                if (ObjectCodec.type(data) == ObjectCodec.COMMIT
+                        && !index.contains(id)) {
+                    index.add(id, id);
+                }
+            }
+        }
+        if (!file.exists()) {
+            Utils.writeContents(file);
+        }
+        return index;
+    }
+
+    /** records that the commit SHA1 is stored at LOCATION and
+     * appends the record to the index file. */
+    void add(String sha1, String location) {
+        put(sha1, location);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            out.writeUTF(sha1);
+            out.writeUTF(location);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** gets where the commit with full hash SHA1 is stored.
+     * @return location, or null if there is no such commit. */
+    String location(String sha1) {
+        return _locations.get(sha1);
+    }
+
+    /** returns true if a commit with full hash SHA1 is indexed. */
+    boolean contains(String sha1) {
+        return _locations.containsKey(sha1);
+    }
+
+    /** finds the full hash of the commit whose id starts with
+     * PREFIX, which may be a complete sha1, in time logarithmic in
+     * the number of commits. Throws a GitletException if more than
+     * one commit's id starts with PREFIX.
+     * @return String, or null if no commit matches. */
+    String resolve(String prefix) {
+        if (_locations.containsKey(prefix)) {
+            return prefix;
+        }
+        SortedSet<String> matches =
+            _sorted.subSet(prefix, prefix + Character.MAX_VALUE);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        String first = matches.first();
+        if (!matches.last().equals(first)) {
+            throw new GitletException(String.format("Ambiguous commit id "
+                    + "%s: it could be %s or %s.", prefix,
+                    first, _sorted.higher(first)));
+        }
+        return first;
+    }
+
+    /** returns the shortest prefix of the indexed id SHA1, but no
+     * shorter than MIN_ABBREV, that no other indexed id starts
+     * with. */
+    String abbreviate(String sha1) {
+        int n = Math.max(MIN_ABBREV, Math.max(common(sha1,
+                _sorted.lower(sha1)), common(sha1, _sorted.higher(sha1)))
+                + 1);
+        return sha1.substring(0, Math.min(n, sha1.length()));
+    }
+
+    /** returns the length of the longest common prefix of A and B,
+     * which may be null. */
+    private static int common(String a, String b) {
+        if (b == null) {
+            return 0;
+        }
+        int n = 0;
+        while (n < a.length() && n < b.length()
+                && a.charAt(n) == b.charAt(n)) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** drops every commit KEEP rejects and writes the rest to a new
+     * index file that replaces the old one whole, so readers see one
+     * or the other. */
+    void retain(Predicate<String> keep) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Iterator<String> ids = _sorted.iterator();
+            while (ids.hasNext()) {
+                String id = ids.next();
+                if (keep.test(id)) {
+                    out.writeUTF(id);
+                    out.writeUTF(_locations.get(id));
+                } else {
+                    ids.remove();
+                    _locations.remove(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContentsAtomically(_file, bytes.toByteArray());
+    }
+
+    /** returns every indexed sha1 in sorted order. */
+    TreeSet<String> ids() {
+        return _sorted;
+    }
+
+    /** adds SHA1 at LOCATION to the in-memory structures. */
+    private void put(String sha1, String location) {
+        _locations.put(sha1, location);
+        _sorted.add(sha1);
+    }
+
+    /** file the index is persisted to. */
+    private File _file;
+    /** maps sha1 of a commit to its file name in the commits folder. */
+    private HashMap<String, String> _locations;
+    /** every indexed sha1, sorted for prefix resolution. */
+    private TreeSet<String> _sorted;
+}
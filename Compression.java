@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The codecs stored objects may be compressed with. A compressed
+ *  object starts with the id byte of its codec, followed by the
+ *  compressed ObjectCodec encoding. Uncompressed objects start with
+ *  ObjectCodec's magic or the Java serialization magic, neither of
+ *  which is a codec id, so readers handle a repository whose objects
+ *  were written with different codecs.
+ *  @author Brandon Byrne
+ */
+enum Compression {
+    /** objects are stored as they are encoded. */
+    NONE(0, "none"),
+    /** objects are compressed with zlib's deflate. */
+    DEFLATE(1, "deflate"),
+    /** objects are compressed with the faster Lz4 codec. */
+    LZ4(2, "lz4");
+
+    /** a codec with id byte ID called NAME. */
+    Compression(int id, String name) {
+        _id = (byte) id;
+        _name = name;
+    }
+
+    /** returns the codec called NAME. */
+    static Compression forName(String name) {
+        for (Compression c : values()) {
+            if (c._name.equals(name)) {
+                return c;
+            }
+        }
+        throw Utils.error("Unknown compression codec %s.", name);
+    }
+
+    /** returns the codec whose id byte is B, or null if B starts
+     * an uncompressed object. */
+    static Compression forId(int b) {
+        for (Compression c : values()) {
+            if (c != NONE && c._id == (byte) b) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /** returns the name of this codec. */
+    String codecName() {
+        return _name;
+    }
+
+    /** returns a stream that writes this codec's id byte to OUT and
+     * then compresses everything written to it into OUT. */
+    OutputStream wrap(OutputStream out) throws IOException {
+        switch (this) {
+        case DEFLATE:
+            out.write(_id);
+            return new DeflaterOutputStream(out);
+        case LZ4:
+            out.write(_id);
+            return new Lz4.Output(out);
+        default:
+            return out;
+        }
+    }
+
+    /** returns a stream over the uncompressed bytes of the object
+     * stored in IN, whichever codec it was written with. */
+    static InputStream open(InputStream in) throws IOException {
+        BufferedInputStream buf = new BufferedInputStream(in);
+        buf.mark(1);
+        Compression c = forId(buf.read());
+        if (c == null) {
+            buf.reset();
+            return buf;
+        }
+        switch (c) {
+        case DEFLATE:
+            return new InflaterInputStream(buf);
+        default:
+            return new Lz4.Input(buf);
+        }
+    }
+
+    /** returns DATA compressed with this codec. */
+    byte[] compress(byte[] data) {
+        if (this == NONE) {
+            return data;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = wrap(bytes);
+            out.write(data);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns the uncompressed form of the stored object DATA. */
+    static byte[] decompress(byte[] data) {
+        if (data.length == 0 || forId(data[0]) == null) {
+            return data;
+        }
+        try (InputStream in = open(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** the byte compressed objects start with. */
+    private final byte _id;
+    /** name of this codec as given to the config command. */
+    private final String _name;
+}
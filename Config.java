@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+/** Per-repository settings, kept as key=value lines in
+ *  .gitlet/config and changed with the config command.
+ *  @author Brandon Byrne
+ */
+class Config {
+    /** key naming the codec new objects are compressed with. */
+    static final String COMPRESSION = "compression";
+    /** key naming how many threads commands may hash and store
+     * files with. */
+    static final String THREADS = "threads";
+    /** key naming how many seconds gc leaves unreachable objects
+     * alone after they are written. */
+    static final String GC_GRACE = "gc.grace";
+    /** the gc grace period when none is configured: two weeks. */
+    static final long GRACE = 14 * 24 * 60 * 60;
+
+    /** loads the settings stored in FILE, which need not exist. */
+    Config(File file) {
+        _file = file;
+        _props = new Properties();
+        if (file.exists()) {
+            try (Reader r = new FileReader(file)) {
+                _props.load(r);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    String get(String key, String defaultValue) {
+        return _props.getProperty(key, defaultValue);
+    }
+
+    /** sets KEY to VALUE and saves the settings. */
+    void set(String key, String value) {
+        _props.setProperty(key, value);
+        StringWriter w = new StringWriter();
+        try {
+            _props.store(w, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContentsAtomically(_file, w.toString());
+    }
+
+    /** returns the codec new objects are compressed with. */
+    Compression compression() {
+        return Compression.forName(get(COMPRESSION, "none"));
+    }
+
+    /** returns the number of threads commands may hash and store
+     * files with: the threads setting, or one per processor. */
+    int threads() {
+        int n = Runtime.getRuntime().availableProcessors();
+        try {
+            return Math.max(1, Integer.parseInt(get(THREADS, "" + n)));
+        } catch (NumberFormatException excp) {
+            return n;
+        }
+    }
+
+    /** returns the gc grace period in milliseconds. */
+    long grace() {
+        try {
+            return 1000 * Math.max(0, Long.parseLong(get(GC_GRACE,
+                    "" + GRACE)));
+        } catch (NumberFormatException excp) {
+            return 1000 * GRACE;
+        }
+    }
+
+    /** file the settings are kept in. */
+    private File _file;
+    /** the settings. */
+    private Properties _props;
+}
@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** A long-lived server for one repository. It listens on the Unix
+ *  domain socket .gitlet/daemon.sock and runs each command sent to it
+ *  against a GitletControlSystem it keeps loaded, so the JVM, the
+ *  repository state and its caches stay warm between commands.
+ *
+ *  A request is the number of arguments followed by each one as a
+ *  UTF string. The reply is everything the command printed, and the
+ *  connection is closed when it is done. Commands are run one at a
+ *  time, in the order they arrive. "daemon stop" shuts the server
+ *  down. A daemon does not start while another answers on the
+ *  socket; a socket left behind by one that died is replaced.
+ *  @author Brandon Byrne
+ */
+class Daemon {
+    /** name of the socket in .gitlet. */
+    static final String SOCKET = "daemon.sock";
+
+    /** a daemon for the repository whose .gitlet directory is DIR. */
+    Daemon(File dir) {
+        _socket = Utils.join(dir, SOCKET);
+        _saved = Utils.join(dir, "GitletObject");
+    }
+
+    /** sends ARGS to the daemon serving the repository in DIR, if
+     * there is one, and copies what it prints to OUT.
+     * @return false if no daemon is listening. */
+    static boolean forward(File dir, String[] args, PrintStream out)
+            throws IOException {
+        File socket = Utils.join(dir, SOCKET);
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(
+                    socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (ch) {
+            DataOutputStream req = new DataOutputStream(
+                    Channels.newOutputStream(ch));
+            req.writeInt(args.length);
+            for (String a : args) {
+                req.writeUTF(a);
+            }
+            req.flush();
+            ch.shutdownOutput();
+            Channels.newInputStream(ch).transferTo(out);
+            out.flush();
+        }
+        return true;
+    }
+
+    /** serves commands until asked to stop. Throws a GitletException
+     * if another daemon is already serving the repository. */
+    void serve() throws IOException {
+        if (answers(_socket)) {
+            throw new GitletException("A daemon is already running.");
+        }
+        Files.deleteIfExists(_socket.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(_socket.toPath()));
+            _socket.deleteOnExit();
+            while (!_stopped) {
+                try (SocketChannel ch = server.accept()) {
+                    handle(ch);
+                } catch (IOException excp) {
+                    _g = null;
+                }
+            }
+        } finally {
+            _socket.delete();
+        }
+    }
+
+    /** returns true if a daemon accepts connections on SOCKET. */
+    private static boolean answers(File socket) {
+        if (!socket.exists()) {
+            return false;
+        }
+        try (SocketChannel ch = SocketChannel.open(
+                UnixDomainSocketAddress.of(socket.toPath()))) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** runs the command read from CH, sending what it prints back. A
+     * connection closed before sending anything, such as that of a
+     * daemon checking whether this one runs, is ignored. */
+    private void handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(ch));
+        int n;
+        try {
+            n = in.readInt();
+        } catch (EOFException excp) {
+            return;
+        }
+        String[] args = new String[n];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        OutputStream reply = new BufferedOutputStream(
+                Channels.newOutputStream(ch));
+        PrintStream out = new PrintStream(reply, false);
+        PrintStream stdout = System.out;
+        System.setOut(out);
+        try {
+            if (args.length == 2 && args[0].equals("daemon")
+                    && args[1].equals("stop")) {
+                _stopped = true;
+            } else {
+                if (changed()) {
+                    _g = null;
+                }
+                _g = Main.execute(args, _g);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            _g = null;
+        } catch (RuntimeException excp) {
+            System.out.println(excp);
+            _g = null;
+        } finally {
+            System.setOut(stdout);
+            out.flush();
+        }
+        _modified = _saved.lastModified();
+        _length = _saved.length();
+    }
+
+    /** returns true if GitletObject was written by someone else since
+     * this daemon last ran a command. */
+    private boolean changed() {
+        return _saved.lastModified() != _modified
+            || _saved.length() != _length;
+    }
+
+    /** the socket this daemon listens on. */
+    private final File _socket;
+    /** the file the repository state is saved in. */
+    private final File _saved;
+    /** the loaded repository state, or null if it must be read. */
+    private GitletControlSystem _g;
+    /** modification time of _saved after the last command. */
+    private long _modified;
+    /** length of _saved after the last command. */
+    private long _length;
+    /** true once asked to stop. */
+    private boolean _stopped;
+}
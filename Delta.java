@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** Binary deltas between two versions of an object. A delta is the
+ *  lengths of the base and the target followed by instructions that
+ *  rebuild the target: COPY, with an offset and length in the base,
+ *  and INSERT, with a length and that many literal bytes. Lengths and
+ *  offsets are unsigned varints.
+ *  @author Brandon Byrne
+ */
+class Delta {
+    /** instruction copying a range of the base. */
+    static final int COPY = 0;
+    /** instruction inserting literal bytes. */
+    static final int INSERT = 1;
+    /** length of the base blocks that are indexed for matching. */
+    static final int BLOCK = 16;
+    /** largest object deltas are computed for. */
+    static final int MAX_SIZE = 1 << 24;
+
+    /** returns a delta that rebuilds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        int[] table = index(base);
+        int mask = table.length - 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            int slot = hash(target, i) & mask;
+            int match = -1;
+            for (int k = slot; table[k] != 0; k = (k + 1) & mask) {
+                int at = table[k] - 1;
+                if (Arrays.equals(base, at, at + BLOCK,
+                                  target, i, i + BLOCK)) {
+                    match = at;
+                    break;
+                }
+            }
+            if (match < 0) {
+                i += 1;
+                continue;
+            }
+            int start = i;
+            while (start > pending && match > 0
+                    && base[match - 1] == target[start - 1]) {
+                start -= 1;
+                match -= 1;
+            }
+            int end = i + BLOCK;
+            int mend = match + (end - start);
+            while (end < target.length && mend < base.length
+                    && base[mend] == target[end]) {
+                end += 1;
+                mend += 1;
+            }
+            insert(out, target, pending, start);
+            out.write(COPY);
+            writeVarint(out, match);
+            writeVarint(out, end - start);
+            pending = end;
+            i = end;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** returns the target rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] pos = {0};
+        try {
+            if (readVarint(delta, pos) != base.length) {
+                throw new IOException("delta does not match its base");
+            }
+            byte[] target = new byte[(int) readVarint(delta, pos)];
+            int out = 0;
+            while (pos[0] < delta.length) {
+                int op = delta[pos[0]++];
+                if (op == COPY) {
+                    int from = (int) readVarint(delta, pos);
+                    int len = (int) readVarint(delta, pos);
+                    System.arraycopy(base, from, target, out, len);
+                    out += len;
+                } else if (op == INSERT) {
+                    int len = (int) readVarint(delta, pos);
+                    System.arraycopy(delta, pos[0], target, out, len);
+                    pos[0] += len;
+                    out += len;
+                } else {
+                    throw new IOException("corrupt delta");
+                }
+            }
+            if (out != target.length) {
+                throw new IOException("corrupt delta");
+            }
+            return target;
+        } catch (IndexOutOfBoundsException excp) {
+            throw new IOException("corrupt delta");
+        }
+    }
+
+    /** removes entries from BASES, which maps objects to the objects
+     * they are to be stored as deltas against, so that no chain of
+     * deltas is longer than MAXDEPTH and no chain loops. */
+    static void limitChains(Map<String, String> bases, int maxDepth) {
+        HashMap<String, Integer> depth = new HashMap<>();
+        for (String start : bases.keySet().toArray(new String[0])) {
+            ArrayList<String> chain = new ArrayList<>();
+            HashSet<String> seen = new HashSet<>();
+            String x = start;
+            while (x != null && !depth.containsKey(x) && seen.add(x)) {
+                chain.add(x);
+                x = bases.get(x);
+            }
+            int d;
+            if (x == null) {
+                d = -1;
+            } else if (depth.containsKey(x)) {
+                d = depth.get(x);
+            } else {
+                bases.remove(chain.get(chain.size() - 1));
+                d = -1;
+            }
+            for (int k = chain.size() - 1; k >= 0; k -= 1) {
+                String y = chain.get(k);
+                d = bases.containsKey(y) ? d + 1 : 0;
+                if (d > maxDepth) {
+                    bases.remove(y);
+                    d = 0;
+                }
+                depth.put(y, d);
+            }
+        }
+    }
+
+    /** returns an open-addressed table of the offsets, plus one, of
+     * the BLOCK-byte blocks of BASE, keyed by their hash. */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(blocks, 1) * 2) * 2;
+        int[] table = new int[size];
+        int mask = size - 1;
+        for (int b = 0; b < blocks; b += 1) {
+            int k = hash(base, b * BLOCK) & mask;
+            while (table[k] != 0) {
+                k = (k + 1) & mask;
+            }
+            table[k] = b * BLOCK + 1;
+        }
+        return table;
+    }
+
+    /** returns a hash of the BLOCK bytes of B starting at I. */
+    private static int hash(byte[] b, int i) {
+        int h = 0;
+        for (int k = i; k < i + BLOCK; k += 1) {
+            h = h * 31 + b[k];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** writes an INSERT of the bytes of B from START to END to OUT. */
+    private static void insert(ByteArrayOutputStream out, byte[] b,
+                               int start, int end) {
+        if (end > start) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(b, start, end - start);
+        }
+    }
+
+    /** writes the unsigned varint N to OUT. */
+    private static void writeVarint(ByteArrayOutputStream out, long n) {
+        while (n >= 0x80) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /** reads an unsigned varint from B at POS[0], advancing it. */
+    private static long readVarint(byte[] b, int[] pos) {
+        long n = 0;
+        for (int shift = 0;; shift += 7) {
+            int x = b[pos[0]++];
+            n |= (long) (x & 0x7f) << shift;
+            if ((x & 0x80) == 0) {
+                return n;
+            }
+        }
+    }
+}
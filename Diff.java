@@ -0,0 +1,341 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs. Two versions of a file are split into lines, each of
+ *  which keeps its line terminator, so a last line with and without
+ *  a newline differ. The lines are numbered so that equal lines get
+ *  equal numbers, and one of two algorithms finds the Edits that turn
+ *  the first version into the second:
+ *
+ *  MYERS is Myers' O((N+M)D) algorithm in its linear-space form,
+ *  which splits the problem at the middle snake of an optimal path.
+ *  It finds a shortest edit script.
+ *
+ *  HISTOGRAM anchors the diff on the line, common to both versions,
+ *  that occurs least often in the first, takes the longest run of
+ *  equal lines around it, and recurses on either side of the run. It
+ *  falls back to Myers where no line occurs rarely enough. Its edits
+ *  tend to follow the structure of the text better when common lines
+ *  such as braces repeat.
+ *
+ *  Differences are written in the unified format, a hunk at a time.
+ *  @author Brandon Byrne
+ */
+class Diff {
+    /** How edits are found. */
+    enum Algorithm {
+        /** shortest edit script by Myers' algorithm. */
+        MYERS,
+        /** histogram diff, anchored on rare lines. */
+        HISTOGRAM
+    }
+
+    /** lines of unchanged context written around each change. */
+    static final int CONTEXT = 3;
+    /** most times a line may occur in a region of the first version
+     * and still anchor a histogram diff. */
+    static final int MAX_OCCURRENCES = 64;
+
+    /** A region of lines [aBegin, aEnd) of the first version that is
+     * replaced by the lines [bBegin, bEnd) of the second. Either may
+     * be empty, for an insertion or a deletion. */
+    static class Edit {
+        /** the region [ABEGIN, AEND) replaced by [BBEGIN, BEND). */
+        Edit(int aBegin, int aEnd, int bBegin, int bEnd) {
+            _aBegin = aBegin;
+            _aEnd = aEnd;
+            _bBegin = bBegin;
+            _bEnd = bEnd;
+        }
+
+        /** returns the first replaced line of the first version. */
+        int aBegin() {
+            return _aBegin;
+        }
+
+        /** returns the line of the first version after the region. */
+        int aEnd() {
+            return _aEnd;
+        }
+
+        /** returns the first replacing line of the second version. */
+        int bBegin() {
+            return _bBegin;
+        }
+
+        /** returns the line of the second version after the region. */
+        int bEnd() {
+            return _bEnd;
+        }
+
+        /** bounds of the regions. */
+        private int _aBegin, _aEnd, _bBegin, _bEnd;
+    }
+
+    /** returns the lines of TEXT, each with its terminating newline
+     * if it has one. */
+    static List<String> lines(String text) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    /** returns the edits that turn the lines A into the lines B, in
+     * order, found by HOW. */
+    static List<Edit> diff(List<String> a, List<String> b, Algorithm how) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] x = number(a, ids), y = number(b, ids);
+        ArrayList<Edit> edits = new ArrayList<>();
+        if (how == Algorithm.HISTOGRAM) {
+            histogram(x, 0, x.length, y, 0, y.length, edits);
+        } else {
+            myers(x, 0, x.length, y, 0, y.length, edits);
+        }
+        ArrayList<Edit> merged = new ArrayList<>();
+        for (Edit e : edits) {
+            Edit last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last._aEnd == e._aBegin
+                    && last._bEnd == e._bBegin) {
+                last._aEnd = e._aEnd;
+                last._bEnd = e._bEnd;
+            } else {
+                merged.add(e);
+            }
+        }
+        return merged;
+    }
+
+    /** returns LINES as numbers, equal lines getting equal numbers
+     * from IDS. */
+    private static int[] number(List<String> lines,
+                                HashMap<String, Integer> ids) {
+        int[] r = new int[lines.size()];
+        for (int i = 0; i < r.length; i += 1) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            r[i] = id;
+        }
+        return r;
+    }
+
+    /** adds to OUT, in order, the edits turning A[ALO, AHI) into
+     * B[BLO, BHI), by Myers' algorithm. */
+    private static void myers(int[] a, int aLo, int aHi, int[] b, int bLo,
+                              int bHi, List<Edit> out) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                out.add(new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi);
+        myers(a, aLo, snake[0], b, bLo, snake[1], out);
+        myers(a, snake[2], aHi, b, snake[3], bHi, out);
+    }
+
+    /** returns the middle snake of a shortest path turning A[ALO, AHI)
+     * into B[BLO, BHI), which differ at both ends, as its start and
+     * end points {x0, y0, x1, y1}. The search runs forward from the
+     * start and backward from the end until the two meet. */
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b,
+                                     int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2, off = max + 1;
+        int[] vf = new int[2 * max + 3], vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && vf[off + k - 1] < vf[off + k + 1]
+                        ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                        && x + vb[off + r] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && vb[off + k - 1] < vb[off + k + 1]
+                        ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                        && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                int f = delta - k;
+                if (!odd && f >= -d && f <= d && x + vf[off + f] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** adds to OUT, in order, the edits turning A[ALO, AHI) into
+     * B[BLO, BHI), by histogram diff. */
+    private static void histogram(int[] a, int aLo, int aHi, int[] b,
+                                  int bLo, int bHi, List<Edit> out) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                out.add(new Edit(aLo, aHi, bLo, bHi));
+            }
+            return;
+        }
+        HashMap<Integer, List<Integer>> where = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            where.computeIfAbsent(a[i], v -> new ArrayList<>()).add(i);
+        }
+        int bestCount = MAX_OCCURRENCES + 1, bestLength = 0;
+        int as = 0, ae = 0, bs = 0, be = 0;
+        for (int j = bLo; j < bHi; j += 1) {
+            List<Integer> occ = where.get(b[j]);
+            if (occ == null || occ.size() > bestCount) {
+                continue;
+            }
+            for (int i : occ) {
+                int s = i, t = j, e = i + 1, f = j + 1;
+                while (s > aLo && t > bLo && a[s - 1] == b[t - 1]) {
+                    s -= 1;
+                    t -= 1;
+                }
+                while (e < aHi && f < bHi && a[e] == b[f]) {
+                    e += 1;
+                    f += 1;
+                }
+                if (occ.size() < bestCount || e - s > bestLength) {
+                    bestCount = occ.size();
+                    bestLength = e - s;
+                    as = s;
+                    ae = e;
+                    bs = t;
+                    be = f;
+                }
+            }
+        }
+        if (bestLength == 0) {
+            myers(a, aLo, aHi, b, bLo, bHi, out);
+            return;
+        }
+        histogram(a, aLo, as, b, bLo, bs, out);
+        histogram(a, ae, aHi, b, be, bHi, out);
+    }
+
+    /** writes the differences between TEXTA, the file NAMEA, and
+     * TEXTB, the file NAMEB, to OUT in the unified format, with
+     * edits found by HOW. A text that is null means the file does not
+     * exist on that side. Nothing is written if the texts are the
+     * same. */
+    static void write(Writer out, String nameA, String textA, String nameB,
+                      String textB, Algorithm how) throws IOException {
+        String a = textA == null ? "/dev/null" : "a/" + nameA;
+        String b = textB == null ? "/dev/null" : "b/" + nameB;
+        if (textA != null && textA.equals(textB)) {
+            return;
+        }
+        out.write("diff --gitlet a/" + nameA + " b/" + nameB + "\n");
+        if (isBinary(textA) || isBinary(textB)) {
+            out.write("Binary files " + a + " and " + b + " differ\n");
+            return;
+        }
+        out.write("--- " + a + "\n+++ " + b + "\n");
+        List<String> x = lines(textA == null ? "" : textA);
+        List<String> y = lines(textB == null ? "" : textB);
+        List<Edit> edits = diff(x, y, how);
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i;
+            while (j + 1 < edits.size() && edits.get(j + 1)._aBegin
+                    - edits.get(j)._aEnd <= 2 * CONTEXT) {
+                j += 1;
+            }
+            writeHunk(out, x, y, edits.subList(i, j + 1));
+            i = j + 1;
+        }
+    }
+
+    /** writes the hunk covering EDITS, which turn the lines A into B,
+     * with their context to OUT. */
+    private static void writeHunk(Writer out, List<String> a, List<String> b,
+                                  List<Edit> edits) throws IOException {
+        Edit first = edits.get(0), last = edits.get(edits.size() - 1);
+        int aStart = Math.max(0, first._aBegin - CONTEXT);
+        int bStart = first._bBegin - (first._aBegin - aStart);
+        int aEnd = Math.min(a.size(), last._aEnd + CONTEXT);
+        int bEnd = last._bEnd + (aEnd - last._aEnd);
+        out.write("@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd)
+                + " @@\n");
+        int k = aStart;
+        for (Edit e : edits) {
+            writeLines(out, " ", a, k, e._aBegin);
+            writeLines(out, "-", a, e._aBegin, e._aEnd);
+            writeLines(out, "+", b, e._bBegin, e._bEnd);
+            k = e._aEnd;
+        }
+        writeLines(out, " ", a, k, aEnd);
+    }
+
+    /** writes LINES[FROM, TO) to OUT, each after TAG. */
+    private static void writeLines(Writer out, String tag, List<String> lines,
+                                   int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            String line = lines.get(i);
+            out.write(tag);
+            out.write(line);
+            if (!line.endsWith("\n")) {
+                out.write("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** returns the unified-format range of the lines [START, END). */
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return "" + (start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    /** returns true if TEXT is not null and looks like binary data. */
+    static boolean isBinary(String text) {
+        return text != null
+                && text.substring(0, Math.min(text.length(), 8000))
+                    .indexOf('\0') >= 0;
+    }
+}
@@ -0,0 +1,274 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Checks the objects of a repository. Every stored copy of every
+ *  object, the loose file and each packed one, is read back,
+ *  uncompressed and hashed again, and the hash compared with the id it
+ *  is stored under. The parents and tree of each commit, the entries
+ *  of each tree and the head of each branch must also be stored. As
+ *  every tree is checked, a commit whose own objects are all there is
+ *  whole, and no history is walked.
+ *
+ *  The copies are checked on the threads setting's worth of Workers,
+ *  each streamed from its file or pack, so a blob is hashed without
+ *  being held in memory.
+ *  @author Brandon Byrne
+ */
+class Fsck {
+
+    /** a check of the repository whose state is G. */
+    Fsck(GitletControlSystem g) {
+        _g = g;
+    }
+
+    /** checks every stored object and every branch.
+     * @return each problem found, one per line, then the number of
+     * objects checked and how fast. */
+    String run() throws IOException {
+        long start = System.nanoTime();
+        LinkedHashSet<String> problems = new LinkedHashSet<>();
+        ArrayList<Copy> copies = new ArrayList<>();
+        for (String id : _g.commitIndex().ids()) {
+            File f = Utils.join(_g.commits(),
+                    _g.commitIndex().location(id));
+            if (f.isFile()) {
+                copies.add(new Copy(id, f, null));
+            } else if (!_g.packs().contains(id)) {
+                problems.add(String.format("Missing commit %s.", id));
+            }
+        }
+        File[] files = _g.blobStore().dir().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                File[] loose = f.isDirectory() ? f.listFiles()
+                        : new File[] {f};
+                for (File o : loose) {
+                    String id = f.isDirectory() ? f.getName() + o.getName()
+                            : o.getName();
+                    if (id.length() == Utils.UID_LENGTH) {
+                        copies.add(new Copy(id, o, null));
+                    }
+                }
+            }
+        }
+        for (PackFile p : _g.packs().list()) {
+            for (String id : p.ids()) {
+                copies.add(new Copy(id, null, p));
+            }
+        }
+        for (List<String> found : Workers.map(copies,
+                _g.config().threads(), this::check)) {
+            problems.addAll(found);
+        }
+        for (String name : _g.refs().names()) {
+            String head = _g.refs().get(name);
+            if (!_g.commitIndex().contains(head)) {
+                problems.add(String.format("Missing head %s of branch %s.",
+                        head, name));
+            }
+        }
+        if (_g.refs().get(_g.refs().head()) == null) {
+            problems.add(String.format("Missing branch %s checked out.",
+                    _g.refs().head()));
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        double mb = _bytes.get() / (1024.0 * 1024.0);
+        StringBuilder report = new StringBuilder();
+        for (String p : problems) {
+            report.append(p).append("\n");
+        }
+        report.append(String.format("Checked %d objects (%.1f MB) in %.2f "
+                + "s: %.0f objects/s, %.1f MB/s.%n", copies.size(), mb,
+                seconds, copies.size() / seconds, mb / seconds));
+        if (problems.isEmpty()) {
+            report.append("No problems found.");
+        } else {
+            report.append(String.format("Found %d problems.",
+                    problems.size()));
+        }
+        return report.toString();
+    }
+
+    /** checks the copy C of an object.
+     * @return the problems found with it. */
+    private List<String> check(Copy c) {
+        ArrayList<String> problems = new ArrayList<>();
+        try (DataInputStream in =
+                 new DataInputStream(Compression.open(c.open()))) {
+            byte[] header = new byte[ObjectCodec.HEADER_LENGTH];
+            in.readFully(header);
+            String sha1;
+            if (ObjectCodec.isLegacy(header)) {
+                sha1 = checkLegacy(header, in);
+            } else if (ObjectCodec.type(header) == ObjectCodec.BLOB) {
+                sha1 = checkBlob(in);
+            } else {
+                sha1 = checkEncoded(c, header, in, problems);
+            }
+            if (!c.id().equals(sha1)) {
+                problems.add(String.format("Corrupt object %s%s.",
+                        c.id(), c));
+            }
+        } catch (IOException | IllegalArgumentException
+                | GitletException excp) {
+            problems.add(String.format("Unreadable object %s%s: %s",
+                    c.id(), c, excp.getMessage()));
+        }
+        return problems;
+    }
+
+    /** reads the rest of a blob from IN, which is positioned after its
+     * header, a buffer at a time.
+     * @return its sha1. */
+    private String checkBlob(DataInputStream in) throws IOException {
+        String name = ObjectCodec.readString(in);
+        long size = in.readLong();
+        MessageDigest md = Utils.sha1Digest();
+        byte[] buf = new byte[Blob.BUFFER_SIZE];
+        for (long left = size; left > 0; ) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+            if (n < 0) {
+                throw new IOException("blob cut short");
+            }
+            md.update(buf, 0, n);
+            left -= n;
+        }
+        if (in.read() >= 0) {
+            throw new IOException("data after blob");
+        }
+        md.update(name.getBytes(StandardCharsets.UTF_8));
+        _bytes.addAndGet(size);
+        return ObjectCodec.bytesToHex(md.digest());
+    }
+
+    /** reads the rest of the commit or tree C, whose HEADER has been
+     * read, from IN. If it is intact, adds to PROBLEMS each object it
+     * names that is not stored.
+     * @return its sha1. */
+    private String checkEncoded(Copy c, byte[] header, InputStream in,
+                                List<String> problems) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header);
+        in.transferTo(bytes);
+        byte[] data = bytes.toByteArray();
+        _bytes.addAndGet(data.length);
+        String sha1 = Utils.sha1(data);
+        byte type = ObjectCodec.type(header);
+        if (!sha1.equals(c.id())) {
+            return sha1;
+        } else if (type == ObjectCodec.COMMIT) {
+            Commit commit = ObjectCodec.decodeCommit(data);
+            for (String p : new String[] {commit.parent(),
+                                          commit.parent2()}) {
+                if (p != null && !_g.commitIndex().contains(p)) {
+                    problems.add(String.format("Missing parent %s of "
+                            + "commit %s.", p, c.id()));
+                }
+            }
+            if (commit.tree() == null) {
+                for (String b : commit.fileToSha().values()) {
+                    missing(b, c, problems);
+                }
+            } else {
+                missing(commit.tree(), c, problems);
+            }
+        } else if (type == ObjectCodec.TREE) {
+            for (Map.Entry<String, String> e
+                     : ObjectCodec.decodeTree(data).entrySet()) {
+                missing(e.getValue(), c, problems);
+            }
+        } else {
+            throw new IOException("unknown object type");
+        }
+        return sha1;
+    }
+
+    /** reads the rest of an object written by Java serialization,
+     * whose HEADER has been read, from IN.
+     * @return the sha1 it records for itself. */
+    private String checkLegacy(byte[] header, InputStream in)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header);
+        in.transferTo(bytes);
+        _bytes.addAndGet(bytes.size());
+        Serializable obj = Utils.deserialize(bytes.toByteArray(),
+                Serializable.class);
+        if (obj instanceof Commit) {
+            return ((Commit) obj).sha1();
+        } else if (obj instanceof Blob) {
+            return ((Blob) obj).sha1();
+        }
+        throw new IOException("unknown object type");
+    }
+
+    /** adds a problem to PROBLEMS if the object SHA1, named by the
+     * object C, is not stored. */
+    private void missing(String sha1, Copy c, List<String> problems) {
+        if (!_g.blobStore().contains(sha1)) {
+            problems.add(String.format("Missing object %s named by %s.",
+                    sha1, c.id()));
+        }
+    }
+
+    /** One stored copy of an object: its loose file or its entry in a
+     * pack. */
+    private static class Copy {
+        /** the copy of the object ID in the loose file FILE, or in
+         * PACK if FILE is null. */
+        Copy(String id, File file, PackFile pack) {
+            _id = id;
+            _file = file;
+            _pack = pack;
+        }
+
+        /** returns the id the object is stored under. */
+        String id() {
+            return _id;
+        }
+
+        /** opens a stream over the stored form of this copy. */
+        InputStream open() throws IOException {
+            if (_file != null) {
+                return new FileInputStream(_file);
+            }
+            InputStream in = _pack.open(_id);
+            if (in == null) {
+                throw new IOException("not in " + _pack.file().getName());
+            }
+            return in;
+        }
+
+        /** returns where this copy is, for a message. */
+        @Override
+        public String toString() {
+            return _file != null ? "" : " in " + _pack.file().getName();
+        }
+
+        /** id of the object. */
+        private final String _id;
+        /** loose file holding the object, or null. */
+        private final File _file;
+        /** pack holding the object, if _file is null. */
+        private final PackFile _pack;
+    }
+
+    /** the repository checked. */
+    private final GitletControlSystem _g;
+    /** uncompressed bytes of the objects checked so far. */
+    private final AtomicLong _bytes = new AtomicLong();
+}
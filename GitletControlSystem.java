@@ -1,10 +1,27 @@
 package gitlet;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Represents the Gitlet version-control system.
  *  @author Brandon Byrne
@@ -30,201 +47,261 @@ public class GitletControlSystem implements Serializable {
         File removal = Utils.join(_path, "removal");
         removal.mkdir();
         _removal = removal;
-        File branches = Utils.join(_path, "branches");
-        branches.mkdir();
-        _branches = branches;
         File commits = Utils.join(_path, "commits");
         commits.mkdir();
         _commits = commits;
+        _commitIndex = CommitIndex.rebuild(Utils.join(_path, "commitIndex"),
+                commits, packs());
         Commit c = new Commit("initial commit", null, null, "master", this);
         File cFile = Utils.join(_commits, c.msg() + c.sha1());
         cFile.createNewFile();
-        Utils.writeObject(cFile, c);
-        Branch b = new Branch("master", c, null, this);
-        _master = b;
-        _activeBranch = b;
-        _active = b.head();
+        ObjectCodec.writeCommit(cFile, c, compression());
+        commitIndex().add(c.sha1(), cFile.getName());
+        refs().set("master", c.sha1());
+        refs().setHead("master");
         _staged = new ArrayList<String>();
-        File g = Utils.join(_path, "GitletObject");
-        g.createNewFile();
-        _branchNames = new ArrayList<>();
-        _branchNames.add("master");
-        Utils.writeObject(g, this);
+        checkpoint();
     }
-    /** adds a FILE to staging area. */
+    /** adds a FILE to staging area. If FILE is a directory, every
+     * file below it is added. */
     public void add(String file) throws IOException {
-        File f = new File(file);
-        if (!f.exists()) {
-            GitletException g = new GitletException("F"
-                    + "ile does not exist.");
-            System.out.println(g.getMessage());
-            return;
+        add(List.of(file));
+    }
+    /** adds each of FILES to the staging area, and every file below
+     * those that are directories. Nothing is staged unless all of
+     * FILES exist. The files are hashed and copied on up to
+     * config().threads() threads. */
+    public void add(List<String> files) throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        for (String file : files) {
+            file = normalize(file);
+            File f = Utils.join(cwd(), file);
+            if (!f.exists()) {
+                GitletException g = new GitletException("F"
+                        + "ile does not exist.");
+                throw g;
+            }
+            if (!f.isDirectory()) {
+                names.add(file);
+                continue;
+            }
+            for (String s : Utils.plainFilenamesUnder(f)) {
+                names.add(file.isEmpty() ? s : file + Tree.SEPARATOR + s);
+            }
+        }
+        Commit head = head();
+        Map<String, String> tracked = head.fileToSha();
+        StatIndex index = statIndex();
+        List<String> order = new ArrayList<>(names);
+        List<String> shas = Workers.map(order, config().threads(),
+            s -> addFile(s, tracked, index));
+        for (int i = 0; i < order.size(); i += 1) {
+            if (shas.get(i) != null) {
+                _staged.add(shas.get(i));
+                _tracked.add(order.get(i));
+            }
         }
+    }
+    /** adds the working file FILE, hashed through INDEX, to the
+     * staging area, unless it is the same as in TRACKED, the files of
+     * the head commit. Touches nothing but FILE's own entries, so it
+     * may run alongside calls for other files.
+     * @return the sha1 of FILE if it was staged, or null. */
+    private String addFile(String file, Map<String, String> tracked,
+                           StatIndex index) throws IOException {
+        File f = Utils.join(cwd(), file);
         File inRemoval = Utils.join(removal(), file);
         if (inRemoval.exists()) {
             inRemoval.delete();
-            return;
+            return null;
         }
-        String sha1f = Utils.sha1(Utils.readContentsAsString(f) + file);
+        String sha1f = index.hash(f, file);
         File newfile = Utils.join(stage(), file);
-        Commit head = getCommit(active(), activeBranch().name());
-        for (String sha1 : head.blobs()) {
-            if (sha1.equals(sha1f) && file.equals(head.shaToFile().get(sha1))) {
-                if (newfile.exists()) {
-                    newfile.delete();
-                }
-                return;
+        if (sha1f.equals(tracked.get(file))) {
+            if (newfile.exists()) {
+                newfile.delete();
             }
+            return null;
         }
-        if (!newfile.exists()) {
-            newfile.createNewFile();
+        newfile.getParentFile().mkdirs();
+        Files.copy(f.toPath(), newfile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return sha1f;
+    }
+    /** returns the path FILE, relative to the working directory, in
+     * the form commits track it: normalized, with "/" between its
+     * parts, and empty for the working directory itself. */
+    static String normalize(String file) {
+        String p = Paths.get(file).normalize().toString();
+        return p.replace(File.separatorChar, '/');
+    }
+    /** returns the working directory. */
+    File cwd() {
+        return _path.getParentFile();
+    }
+    /** deletes everything below the directory DIR. */
+    static void clear(File dir) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File f : entries) {
+            if (f.isDirectory()) {
+                clear(f);
+            }
+            f.delete();
+        }
+    }
+    /** deletes the working file NAME, and any directories above it
+     * that are left empty. */
+    void deleteWorkingFile(String name) {
+        File f = Utils.join(cwd(), name);
+        if (!f.delete()) {
+            return;
+        }
+        File cwd = cwd();
+        for (File d = f.getParentFile(); d != null && !d.equals(cwd);
+             d = d.getParentFile()) {
+            String[] left = d.list();
+            if (left == null || left.length > 0 || !d.delete()) {
+                break;
+            }
         }
-        Utils.writeContents(newfile, Utils.readContentsAsString(f));
-        _staged.add(sha1f);
-        _tracked.add(file);
     }
     /** creates a new commit
      * with MSG and PARENT2. */
     public void commit(String msg, Commit parent2) throws IOException {
-        if (Utils.plainFilenamesIn(_stage).size() == 0
-            && Utils.plainFilenamesIn(removal()).size() == 0) {
+        if (Utils.plainFilenamesUnder(_stage).size() == 0
+            && Utils.plainFilenamesUnder(removal()).size() == 0) {
             GitletException g = new GitletException("No"
                     + " changes added to the commit.");
-            System.out.println(g.getMessage());
-            return;
+            throw g;
         }
-        Commit parent = getCommit(active(), activeBranch().name());
-        Commit c = new Commit(msg, parent,
-                parent2, activeBranch().name(), this);
-        File f = Utils.join(branches(), activeBranch().name());
-        File f1 = Utils.join(f, c.sha1());
-        f1.createNewFile();
-        Utils.writeObject(f1, c);
-        _active = c.sha1();
-        File cFile = Utils.join(commits(), msg + c.sha1());
-        cFile.createNewFile();
-        Utils.writeObject(cFile, c);
+        String branch = refs().head();
+        Commit parent = head();
+        Commit c = new Commit(msg, parent, parent2, branch, this);
+        File cFile = Utils.join(commits(), c.sha1());
+        ObjectCodec.writeCommit(cFile, c, compression());
+        commitIndex().add(c.sha1(), cFile.getName());
+        commitGraph().add(c.sha1(), this::getCommit);
+        messageIndex().add(c.sha1(), msg);
+        refs().set(branch, c.sha1());
         tracked().clear();
-        File r;
-        for (String s : Utils.plainFilenamesIn(removal())) {
-            r = Utils.join(removal(), s);
-            r.delete();
+        _staged.clear();
+        clearStage();
+    }
+    /** empties the stage and the removal area in the same journal
+     * transaction as the changes recorded so far, such as a commit's
+     * ref, and checkpoints. A failure or crash before the transaction
+     * lands leaves the staged files and the ref as they were, and one
+     * after it leaves neither. */
+    private void clearStage() {
+        for (File dir : new File[] {stage(), removal()}) {
+            for (String s : Utils.plainFilenamesUnder(dir)) {
+                journal().delete(dir.getName() + "/" + s);
+            }
         }
-        activeBranch().setHead(_active);
-        File meta = Utils.join(f, "branchMeta");
-        Utils.writeObject(meta, activeBranch());
-        File f2 = Utils.join(path(), "GitletObject");
-        Utils.writeObject(f2, this);
+        checkpoint();
+        clear(removal());
+        clear(stage());
     }
     /** creates new branch named NAME. */
-    public void branch(String name) throws IOException {
-        for (String s : _branchNames) {
-            if (s.equals(name)) {
-                GitletException g1 =  new GitletException("A "
-                        + "branch with that name already exists.");
-                System.out.println(g1.getMessage());
-                return;
-            }
+    public void branch(String name) {
+        if (refs().get(name) != null) {
+            GitletException g1 =  new GitletException("A "
+                    + "branch with that name already exists.");
+            throw g1;
         }
-        new Branch(name, this);
-        _branchNames.add(name);
+        refs().set(name, active());
     }
     /** removes a branch named NAME. */
     public void rmBranch(String name) {
         if (name.equals(activeBranch().name())) {
             GitletException g1 = new GitletException("Cannot "
                     + "remove the current branch.");
-            System.out.println(g1.getMessage());
-            return;
+            throw g1;
         }
-        File f = Utils.join(branches(), name);
-        if (!f.exists()) {
+        if (!refs().delete(name)) {
             GitletException g2 = new GitletException("A "
                     + "branch with that name does not exist.");
-            System.out.println(g2.getMessage());
-            return;
-        }
-        File f1;
-        for (String s : Utils.plainFilenamesIn(f)) {
-            f1 = Utils.join(f, s);
-            f1.delete();
+            throw g2;
         }
-        f.delete();
-        _branchNames.remove(name);
-        File g = Utils.join(path(), "GitletObject");
-        Utils.writeObject(g, this);
     }
     /** stages FILE for removal. */
     public void remove(String file) throws IOException {
+        file = normalize(file);
         boolean error = true;
         File f = Utils.join(stage(), file);
-        if (f.exists()) {
+        if (f.isFile()) {
             error = false;
             f.delete();
             tracked().remove(file);
         }
-        File f1 = new File(file);
-        Commit head = getCommit(active(), activeBranch().name());
-        if (head.tracked().contains(file)) {
+        Commit head = head();
+        if (head.fileToSha().containsKey(file)) {
             error = false;
             File r = Utils.join(removal(), file);
             if (!r.exists()) {
+                r.getParentFile().mkdirs();
                 r.createNewFile();
             }
-            if (f1.exists()) {
-                f1.delete();
-            }
+            deleteWorkingFile(file);
         }
         if (error) {
             GitletException g = new GitletException("No"
                     + " reason to remove the file.");
-            System.out.println(g.getMessage());
+            throw g;
         }
     }
-    /**returns log of active commit's history. */
-    public String log() {
-        String r = "";
-        Commit c = getCommit(active(), activeBranch().name());
-        while (c != null) {
-            r = r + c.toString();
+    /** writes the log of the active commit's history to OUT, one
+     * commit at a time, following first parents. Only commits within
+     * LIMITS are written, and the walk stops as soon as no more can
+     * be. */
+    public void log(Writer out, LogLimits limits) throws IOException {
+        Commit c = head();
+        int shown = 0;
+        while (c != null && !limits.full(shown) && !limits.before(c)) {
+            if (limits.shows(c)) {
+                out.write(entry(c, limits));
+                shown += 1;
+            }
             c = getCommit(c.parent());
         }
-        return r;
     }
-    /** returns lof of BRANCH's commit history.
-     * @return String */
-    public String log(String branch) {
-        String r = "";
-        File branchFolder = Utils.join(branches(), branch);
-        for (String commit : Utils.plainFilenamesIn(branchFolder)) {
-            Commit c = getCommit(commit, branch);
-            r = r + c.toString();
+    /** returns the log entry of C, with its id abbreviated if LIMITS
+     * say so. */
+    private String entry(Commit c, LogLimits limits) {
+        if (!limits.abbrev()) {
+            return c.toString();
         }
-        return r;
+        return c.toString(commitIndex().abbreviate(c.sha1()));
     }
-    /** returns log of every commit made.
-     * @return String*/
-    public String globalLog() {
-        String r = "";
-        for (String file : Utils.plainFilenamesIn(commits())) {
-            File f = Utils.join(commits(), file);
-            Commit c = Utils.readObject(f, Commit.class);
-            r = r + c.toString();
+    /** writes the log of every commit made within LIMITS to OUT, one
+     * commit at a time. */
+    public void globalLog(Writer out, LogLimits limits) throws IOException {
+        int shown = 0;
+        for (String id : commitIndex().ids()) {
+            if (limits.full(shown)) {
+                break;
+            }
+            Commit c = getCommit(id);
+            if (c != null && limits.shows(c)) {
+                out.write(entry(c, limits));
+                shown += 1;
+            }
         }
-        return r;
     }
-    /** finds all commits with message MSG.
-     * @return String */
-    public String find(String msg) {
-        String r = "";
-        for (String s : Utils.plainFilenamesIn(commits())) {
-            if (s.contains(msg)) {
-                File f = Utils.join(commits(), s);
-                Commit c = Utils.readObject(f, Commit.class);
-                r = r + c.sha1() + "\n";
-            }
+    /** writes the id of every commit whose message matches MSG as
+     * HOW says to OUT, one per line, in sorted order.
+     * @return the number of commits found. */
+    public int find(String msg, MessageIndex.Match how, Writer out)
+            throws IOException {
+        int found = 0;
+        for (String id : messageIndex().find(msg, how)) {
+            out.write(id + "\n");
+            found += 1;
         }
-        return r;
+        return found;
     }
     /** checkout FILE from commit with hash COMMIT.*/
     public void checkoutFile(String file, String commit) {
@@ -232,169 +309,252 @@ public class GitletControlSystem implements Serializable {
         if (head == null) {
             GitletException g = new GitletException("No"
                     + " commit with that id exists.");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
+        file = normalize(file);
         if (!head.fileToSha().containsKey(file)) {
             GitletException g = new GitletException("File"
                     + " does not exist in that commit.");
-            System.out.println(g.getMessage());
+            throw g;
+        }
+        checkoutFile(file, head);
+    }
+    /** writes the version of FILE tracked by HEAD to the working
+     * directory, unless it is there already. */
+    private void checkoutFile(String file, Commit head) {
+        writeWorkingFile(file, head.fileToSha().get(file), statIndex(),
+                blobStore());
+    }
+    /** writes the blob SHA1 in STORE to the working file FILE, unless
+     * INDEX knows that FILE holds it already. Touches nothing but
+     * FILE, so it may run alongside calls for other files. */
+    private void writeWorkingFile(String file, String sha1, StatIndex index,
+                                  ObjectStore store) {
+        File replace = Utils.join(cwd(), file);
+        if (sha1.equals(index.cached(replace, file))) {
             return;
         }
-        String sha1Blob = head.fileToSha().get(file);
-        Blob blob = getBlobInBlobs(sha1Blob);
-        File cwd = new File(System.getProperty("user.dir"));
-        File replace = Utils.join(cwd, file);
-        Utils.writeContents(replace, blob.contents());
+        Blob blob = ObjectCodec.readBlob(sha1, store);
+        replace.getParentFile().mkdirs();
+        blob.copyTo(replace);
+    }
+    /** returns the files whose blobs differ between the commits FROM
+     * and TO, mapping each to its blob sha1 in TO, or to null if TO
+     * does not track it. If BEFORE is not null each file is also
+     * mapped there to its blob sha1 in FROM, or to null. */
+    Map<String, String> changes(Commit from, Commit to,
+                                Map<String, String> before) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        if (from.tree() != null && to.tree() != null) {
+            Tree.diff(blobStore(), from.tree(), to.tree(), "", changes,
+                    before);
+            return changes;
+        }
+        for (Map.Entry<String, String> e : to.fileToSha().entrySet()) {
+            String old = from.fileToSha().get(e.getKey());
+            if (!e.getValue().equals(old)) {
+                changes.put(e.getKey(), e.getValue());
+                if (before != null) {
+                    before.put(e.getKey(), old);
+                }
+            }
+        }
+        for (String s : from.tracked()) {
+            if (!to.fileToSha().containsKey(s)) {
+                changes.put(s, null);
+                if (before != null) {
+                    before.put(s, from.fileToSha().get(s));
+                }
+            }
+        }
+        return changes;
+    }
+    /** changes the working directory from the files of the commit
+     * FROM to those of TO, touching only the files that differ
+     * between them. Files are written on up to config().threads()
+     * threads. */
+    private void checkoutChanges(Commit from, Commit to) throws IOException {
+        Map<String, String> changes = changes(from, to, null);
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                deleteWorkingFile(e.getKey());
+            } else {
+                writes.add(e.getKey());
+            }
+        }
+        StatIndex index = statIndex();
+        ObjectStore store = blobStore();
+        Workers.map(writes, config().threads(), s -> {
+            writeWorkingFile(s, changes.get(s), index, store);
+            return null;
+        });
     }
     /** checkout BRANCH. */
-    public void checkoutBranch(String branch) {
-        File cwd = new File(System.getProperty("user.dir"));
-        File branchFolder = Utils.join(branches(), branch);
-        Commit oldHead = getCommit(active(), activeBranch().name());
-        if (!branchFolder.exists()) {
+    public void checkoutBranch(String branch) throws IOException {
+        String id = refs().get(branch);
+        Commit oldHead = head();
+        if (id == null) {
             GitletException g = new GitletException("No "
                     + "such branch exists.");
-            System.out.println(g.getMessage());
-            return;
+            throw g;
         }
-        if (activeBranch().name().equals(branch)) {
+        if (refs().head().equals(branch)) {
             GitletException g = new GitletException("No "
                     + "need to checkout the current branch.");
-            System.out.println(g.getMessage());
-            return;
+            throw g;
         }
-        List<String> stage = Utils.plainFilenamesIn(stage());
-        for (String s : Utils.plainFilenamesIn(cwd)) {
-            if (!oldHead.tracked().contains(s)
+        Set<String> stage = new HashSet<>(Utils.plainFilenamesUnder(stage()));
+        for (String s : Utils.plainFilenamesUnder(cwd())) {
+            if (!oldHead.fileToSha().containsKey(s)
                 && !stage.contains(s)) {
                 GitletException g = new GitletException("There is an"
                         + " untracked file in the way; "
                         + "delete it or add and commit it first.");
-                System.out.println(g.getMessage());
-                return;
-            }
-        }
-        File branchMeta = Utils.join(branchFolder, "branchMeta");
-        Branch b = Utils.readObject(branchMeta, Branch.class);
-        Commit head = getCommit(b.head(), branch);
-        for (String s : head.tracked()) {
-            checkoutFile(s, head.sha1());
-        }
-        for (String s : oldHead.shaToFile().values()) {
-            if (!head.fileToSha().containsKey(s)) {
-                File f = Utils.join(cwd, s);
-                f.delete();
+                throw g;
             }
         }
+        checkoutChanges(oldHead, getCommit(id));
         tracked().clear();
-        _activeBranch = b;
-        _active = b.head();
-        for (File f : stage().listFiles()) {
-            f.delete();
-        }
+        refs().setHead(branch);
+        clear(stage());
     }
-    /** resets to commit with HASH.*/
-    public void reset(String hash) {
-        Commit head = null;
-        Commit oldHead = getCommit(active(), activeBranch().name());
-        for (String s : Utils.plainFilenamesIn(commits())) {
-            if (s.contains(hash)) {
-                File f = Utils.join(commits(), s);
-                head = Utils.readObject(f, Commit.class);
-                break;
-            }
-        }
+    /** resets the current branch to the commit with HASH, checking
+     * out its files. Everything that can fail is checked before any
+     * file is changed. */
+    public void reset(String hash) throws IOException {
+        String branch = refs().head();
+        Commit oldHead = head();
+        Commit head = getCommit(hash);
         if (head == null) {
             GitletException g1 = new GitletException("No"
                     + " commit with that id exists.");
-            System.out.println(g1.getMessage());
-            System.exit(0);
+            throw g1;
         }
-        File cwd = new File(System.getProperty("user.dir"));
-        for (String s : Utils.plainFilenamesIn(cwd)) {
-            if (!oldHead.tracked().contains(s)
-                    && head.tracked().contains(s)) {
+        for (String s : Utils.plainFilenamesUnder(cwd())) {
+            if (!oldHead.fileToSha().containsKey(s)
+                    && head.fileToSha().containsKey(s)) {
                 GitletException g = new GitletException("There is an "
                         + "untracked file in the way;"
                         + " delete it or add and commit it first.");
-                System.out.println(g.getMessage());
-                return;
+                throw g;
             }
-            if (!head.tracked().contains(s)) {
-                File f = Utils.join(cwd, s);
-                if (f.exists()) {
-                    f.delete();
-                }
+        }
+        checkoutChanges(oldHead, head);
+        tracked().clear();
+        clear(stage());
+        refs().set(branch, head.sha1());
+    }
+    /** writes the differences between the files of the commits FROM
+     * and TO, which may be abbreviated, to OUT, with edits found by
+     * HOW. Only files whose blobs differ are read. */
+    public void diff(String from, String to, Diff.Algorithm how,
+                     Writer out) throws IOException {
+        Commit a = getCommit(from), b = getCommit(to);
+        if (a == null || b == null) {
+            GitletException g = new GitletException("No"
+                    + " commit with that id exists.");
+            throw g;
+        }
+        TreeMap<String, String> before = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes(a, b, before).entrySet()) {
+            String name = e.getKey();
+            Diff.write(out, name, blobText(before.get(name)), name,
+                    blobText(e.getValue()), how);
+        }
+    }
+    /** writes the differences between the head commit and the staging
+     * area to OUT, with edits found by HOW. */
+    public void diffStaged(Diff.Algorithm how, Writer out)
+            throws IOException {
+        Commit head = head();
+        TreeSet<String> names =
+            new TreeSet<>(Utils.plainFilenamesUnder(stage()));
+        names.addAll(Utils.plainFilenamesUnder(removal()));
+        for (String name : names) {
+            File staged = Utils.join(stage(), name);
+            String old = head.fileToSha().get(name);
+            if (!staged.isFile()) {
+                Diff.write(out, name, blobText(old), name, null, how);
+            } else if (!statIndex().hash(staged, name).equals(old)) {
+                Diff.write(out, name, blobText(old), name,
+                        Utils.readContentsAsString(staged), how);
             }
         }
-        for (String s : head.tracked()) {
-            checkoutFile(s, head.sha1());
+        if (!_deferSaves) {
+            statIndex().save();
         }
-        for (String s : oldHead.shaToFile().values()) {
-            if (!head.fileToSha().containsKey(s)
-                    && !head.tracked().contains(s)) {
-                File f = Utils.join(cwd, s);
-                if (f.exists()) {
-                    f.delete();
-                }
+    }
+    /** writes the differences between the files that would be
+     * committed, the head commit's with the staging area applied, and
+     * the working directory to OUT, with edits found by HOW. Files
+     * whose hash is unchanged are not read. */
+    public void diffWorking(Diff.Algorithm how, Writer out)
+            throws IOException {
+        Commit head = head();
+        TreeMap<String, String> index = new TreeMap<>(head.fileToSha());
+        for (String s : Utils.plainFilenamesUnder(removal())) {
+            index.remove(s);
+        }
+        Set<String> staged = new HashSet<>(Utils.plainFilenamesUnder(stage()));
+        for (String s : staged) {
+            index.put(s, statIndex().hash(Utils.join(stage(), s), s));
+        }
+        for (Map.Entry<String, String> e : index.entrySet()) {
+            String name = e.getKey();
+            File w = Utils.join(cwd(), name);
+            if (w.isFile() && statIndex().hash(w, name).equals(e.getValue())) {
+                continue;
             }
+            String old = staged.contains(name)
+                    ? Utils.readContentsAsString(Utils.join(stage(), name))
+                    : blobText(e.getValue());
+            Diff.write(out, name, old, name,
+                    w.isFile() ? Utils.readContentsAsString(w) : null, how);
         }
-        tracked().clear();
-        _activeBranch = getBranch(head.branch());
-        _active = head.sha1();
-        for (File f : stage().listFiles()) {
-            f.delete();
+        if (!_deferSaves) {
+            statIndex().save();
         }
-        _activeBranch.setHead(head.sha1());
-        File f1 = Utils.join(branches(), activeBranch().name());
-        File meta = Utils.join(f1, "branchMeta");
-        Utils.writeObject(meta, activeBranch());
+    }
+    /** returns the contents of the blob SHA1, or null if SHA1 is. */
+    private String blobText(String sha1) {
+        return sha1 == null ? null : getBlobInBlobs(sha1).contents();
     }
     /** returns status of this control system. */
     public String status() {
-        Commit head = getCommit(active(), activeBranch().name());
-        File cwd = new File(System.getProperty("user.dir"));
-        String x = System.lineSeparator();
+        Commit head = head();
+        File cwd = cwd();
         String r = "=== Branches ===\n";
-        String[] order = new String[_branchNames.size()];
-        arrange(_branchNames, order);
-        for (String s : order) {
-            if (s.equals(activeBranch().name())) {
+        String active = refs().head();
+        for (String s : refs().names()) {
+            if (s.equals(active)) {
                 s = "*" + s;
             }
             r = r + s + "\n";
         }
         r = r + "\n=== Staged Files ===\n";
-        order = new String[tracked().size()];
-        List<String> stage = Utils.plainFilenamesIn(stage());
-        arrange(stage, order);
-        for (int i = 0; i < order.length; i++) {
-            r = r + order[i] + "\n";
+        List<String> stage = Utils.plainFilenamesUnder(stage());
+        for (String s : stage) {
+            r = r + s + "\n";
         }
         r = r + "\n=== Removed Files ===";
-        List<String> removed = Utils.plainFilenamesIn(removal());
-        order = new String[removed.size()];
-        arrange(removed, order);
-        for (int i = 0; i < order.length; i++) {
-            r = r + "\n" + order[i];
+        for (String s : Utils.plainFilenamesUnder(removal())) {
+            r = r + "\n" + s;
         }
         r = r + "\n\n=== Modifications Not Staged For Commit ===\n";
         ArrayList<String> modded = helper();
-        order = new String[modded.size()];
-        arrange(modded, order);
-        for (int i = 0; i < order.length; i++) {
-            File current = Utils.join(cwd, order[i]);
-            if (!current.exists()) {
-                r = r + order[i] + " (deleted)\n";
+        Collections.sort(modded);
+        for (String s : modded) {
+            if (!Utils.join(cwd, s).exists()) {
+                r = r + s + " (deleted)\n";
             } else {
-                r = r + order[i] + " (modified)\n";
+                r = r + s + " (modified)\n";
             }
         }
         r = r + "\n=== Untracked Files ===";
-        List<String> stage1 = Utils.plainFilenamesIn(stage());
-        for (String s : Utils.plainFilenamesIn(cwd)) {
-            if (!head.tracked().contains(s) && !stage1.contains(s)) {
+        Set<String> staged = new HashSet<>(stage);
+        for (String s : Utils.plainFilenamesUnder(cwd)) {
+            if (!head.fileToSha().containsKey(s) && !staged.contains(s)) {
                 r = r + "\n" + s;
             }
         }
@@ -405,95 +565,60 @@ public class GitletControlSystem implements Serializable {
      * that have untracked modifications.
      * @return ArrayList*/
     public ArrayList<String> helper() {
-        File cwd = new File(System.getProperty("user.dir"));
+        File cwd = cwd();
         ArrayList<String> shaOfStaged = new ArrayList<>();
         ArrayList<String> modded = new ArrayList<>();
-        for (String s : Utils.plainFilenamesIn(stage())) {
+        for (String s : Utils.plainFilenamesUnder(stage())) {
             File staged = Utils.join(cwd, s);
             File fileOnStage = Utils.join(stage(), s);
-            String x = Utils.readContentsAsString(fileOnStage) + s;
-            String sha = Utils.sha1(x);
+            String sha = statIndex().hash(fileOnStage, s);
             if (!staged.exists()) {
                 modded.add(s);
             } else {
-                String y = Utils.readContentsAsString(staged) + s;
-                String cwdVersion = Utils.sha1(y);
+                String cwdVersion = statIndex().hash(staged, s);
                 if (!cwdVersion.equals(sha)) {
                     modded.add(s);
                 }
             }
             shaOfStaged.add(sha);
         }
-        Commit head = getCommit(active(), activeBranch().name());
-        for (String s : head.blobs()) {
-            Blob blob = getBlobInBlobs(s);
-            File f = Utils.join(cwd, blob.name());
-            File remove = Utils.join(removal(), blob.name());
-            File stageVersion = Utils.join(stage(), blob.name());
+        Commit head = head();
+        for (Map.Entry<String, String> e : head.fileToSha().entrySet()) {
+            String name = e.getKey();
+            File f = Utils.join(cwd, name);
+            File remove = Utils.join(removal(), name);
+            File stageVersion = Utils.join(stage(), name);
             if (!f.exists() && !remove.exists()) {
-                modded.add(blob.name());
+                modded.add(name);
             }
             if (!stageVersion.exists() && f.exists()
-                    && !Utils.readContentsAsString(f).equals(blob.contents())) {
-                modded.add(blob.name());
-            }
-        }
-        return modded;
-    }
-    /** orders the list of strings in INPUT and puts
-     * it into ORDER.
-     */
-    public void arrange(List<String> input, String[] order) {
-        for (String s : input) {
-            if (order[0] == null) {
-                order[0] = s;
-            } else {
-                for (int i = 0; i < order.length; i++) {
-                    if (s.compareTo(order[i]) < 0) {
-                        insert(s, order, i);
-                    }
-                    if (order[i + 1] == null) {
-                        order[i + 1] = s;
-                        break;
-                    }
-                }
+                    && !statIndex().hash(f, name).equals(e.getValue())) {
+                modded.add(name);
             }
         }
-    }
-    /**inserts String S into array A at position K. */
-    public void insert(String s, String[] A, int k) {
-        String current = s;
-        String next = A[k];
-        for (int i = k; i < A.length; i++) {
-            if (current == null) {
-                break;
-            }
-            A[i] = current;
-            current = next;
-            next = A[i + 1];
+        if (!_deferSaves) {
+            statIndex().save();
         }
+        return modded;
     }
     /** merges BRANCHNAME with active branch.*/
     public void merge(String branchName) throws IOException {
         mergeErrors(branchName);
-        File cwd = new File(System.getProperty("user.dir"));
+        File cwd = cwd();
         Branch b = getBranch(branchName);
-        Commit branchHead = getCommit(b.head(), branchName);
-        Commit split = ancestor(b.head());
-        Commit head = getCommit(active(), activeBranch().name());
-        if (split.sha1().equals(branchHead.sha1())) {
+        Commit branchHead = getCommit(b.head());
+        if (commitGraph().isAncestor(branchHead.sha1(), active())) {
             GitletException g = new GitletException("Given branch "
                     + "is an ancestor of the current branch.");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
-        if (split.sha1().equals(active())) {
-            GitletException g = new GitletException("Current "
-                    + "branch fast-forwarded.");
+        if (commitGraph().isAncestor(active(), branchHead.sha1())) {
             checkoutBranch(branchName);
-            System.out.println(g.getMessage());
-            System.exit(0);
+            System.out.println("Current branch fast-forwarded.");
+            return;
         }
+        Commit split = ancestor(b.head());
+        Commit head = head();
         boolean conf = false;
         for (String s : head.blobs()) {
             conf = mergeHelper(s, split, branchHead, conf);
@@ -501,14 +626,14 @@ public class GitletControlSystem implements Serializable {
         for (String s : branchHead.blobs()) {
             Blob blob = getBlobInBlobs(s);
             String fileName = branchHead.shaToFile().get(s);
-            if (!split.tracked().contains(fileName)
-                && !head.tracked().contains(fileName)) {
-                checkoutFile(fileName, branchHead.sha1());
+            if (!split.fileToSha().containsKey(fileName)
+                && !head.fileToSha().containsKey(fileName)) {
+                checkoutFile(fileName, branchHead);
                 add(fileName);
             }
-            boolean splitHasFile = split.tracked().contains(blob.name());
-            boolean splitHasSameContent = split.blobs().contains(s);
-            boolean headHasFile = head.tracked().contains(blob.name());
+            boolean splitHasFile = split.fileToSha().containsKey(blob.name());
+            boolean splitHasSameContent = split.shaToFile().containsKey(s);
+            boolean headHasFile = head.fileToSha().containsKey(blob.name());
             if (splitHasFile && !splitHasSameContent && !headHasFile) {
                 String contents = "";
                 if (headHasFile) {
@@ -519,6 +644,7 @@ public class GitletControlSystem implements Serializable {
                 String conflict = "<<<<<<< HEAD\n" + contents
                         + "=======\n" + blob.contents() + "\n>>>>>>>";
                 File f1 = Utils.join(cwd, blob.name());
+                f1.getParentFile().mkdirs();
                 Utils.writeContents(f1, conflict);
                 add(blob.name());
                 if (!conf) {
@@ -539,43 +665,38 @@ public class GitletControlSystem implements Serializable {
     public boolean mergeHelper(String s,
                                Commit split, Commit branchHead, boolean conf)
                             throws IOException {
-        File cwd = new File(System.getProperty("user.dir"));
+        File cwd = cwd();
         Blob blob = getBlobInBlobs(s);
-        if (split.blobs().contains(s)
-                && !branchHead.blobs().contains(s)
-                && branchHead.tracked().contains(blob.name())) {
-            checkoutFile(blob.name(), branchHead.sha1());
+        if (split.shaToFile().containsKey(s)
+                && !branchHead.shaToFile().containsKey(s)
+                && branchHead.fileToSha().containsKey(blob.name())) {
+            checkoutFile(blob.name(), branchHead);
             add(blob.name());
         }
-        if (split.blobs().contains(s)
-                && !branchHead.tracked().contains(blob.name())) {
-            File f = Utils.join(cwd, blob.name());
-            if (f.exists()) {
-                f.delete();
-            }
+        if (split.shaToFile().containsKey(s)
+                && !branchHead.fileToSha().containsKey(blob.name())) {
             remove(blob.name());
         }
-        boolean splitHasFile = split.tracked().contains(blob.name());
-        boolean splitHasSameContent = split.blobs().contains(s);
-        boolean branchHasFile = branchHead.tracked().contains(blob.name());
-        boolean branchHasSameContent = branchHead.blobs().contains(s);
+        boolean splitHasFile = split.fileToSha().containsKey(blob.name());
+        boolean splitHasSameContent = split.shaToFile().containsKey(s);
+        boolean branchHasFile = branchHead.fileToSha().containsKey(blob.name());
+        boolean branchHasSameContent = branchHead.shaToFile().containsKey(s);
         String x = branchHead.fileToSha().get(blob.name());
         if ((splitHasFile && !splitHasSameContent && !branchHasSameContent
                 && branchHasFile
-                && !split.blobs().contains(x))
+                && !split.shaToFile().containsKey(x))
                 || (!splitHasFile
-                && branchHasFile && !branchHasSameContent)
-                || (splitHasFile
-                && !splitHasSameContent && !branchHasFile)) {
-            String content = "";
-            if (branchHasFile) {
-                String y = branchHead.fileToSha().get(blob.name());
-                Blob branchBlob = getBlobInBlobs(y);
-                content = branchBlob.contents();
+                && branchHasFile && !branchHasSameContent)) {
+            if (mergeFile(blob.name(), split.fileToSha().get(blob.name()),
+                    s, x) && !conf) {
+                conf = true;
+                System.out.println("Encountered a merge conflict.");
             }
+        } else if (splitHasFile && !splitHasSameContent && !branchHasFile) {
             String conflict = "<<<<<<< HEAD\n" + blob.contents()
-                    + "=======\n" + content + ">>>>>>>\n";
+                    + "=======\n>>>>>>>\n";
             File f1 = Utils.join(cwd, blob.name());
+            f1.getParentFile().mkdirs();
             Utils.writeContents(f1, conflict);
             add(blob.name());
             if (!conf) {
@@ -585,151 +706,391 @@ public class GitletControlSystem implements Serializable {
         }
         return conf;
     }
+    /** writes to the file NAME the line merge of the blobs OURS and
+     * THEIRS, both changed from the blob BASE, or added if BASE is
+     * null, and stages it.
+     * @return true if the merge has conflicts. */
+    private boolean mergeFile(String name, String base, String ours,
+                              String theirs) throws IOException {
+        File f = Utils.join(cwd(), name);
+        f.getParentFile().mkdirs();
+        int conflicts;
+        try (Writer out = Files.newBufferedWriter(f.toPath(),
+                StandardCharsets.UTF_8)) {
+            conflicts = Merge3.merge(out, base == null ? "" : blobText(base),
+                    blobText(ours), blobText(theirs), Diff.Algorithm.MYERS);
+        }
+        add(name);
+        return conflicts > 0;
+    }
     /** looks for merge errors.
      * BRANCHNAME is given branch in merge.*/
     public void mergeErrors(String branchName) {
-        File cwd = new File(System.getProperty("user.dir"));
-        if (Utils.plainFilenamesIn(stage()).size() > 0
-                || Utils.plainFilenamesIn(removal()).size() > 0) {
+        if (Utils.plainFilenamesUnder(stage()).size() > 0
+                || Utils.plainFilenamesUnder(removal()).size() > 0) {
             GitletException g = new GitletException("You "
                     + "have uncommitted changes.");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
         if (branchName.equals(activeBranch().name())) {
             GitletException g = new GitletException("Cannot"
                     + " merge a branch with itself. ");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
-        Commit c = getCommit(active(), activeBranch().name());
-        List<String> stage = Utils.plainFilenamesIn(stage());
-        List<String> removed = Utils.plainFilenamesIn(removal());
-        for (String s : Utils.plainFilenamesIn(cwd)) {
-            if (!c.tracked().contains(s) && !stage.contains(s)
+        Commit c = head();
+        Set<String> stage = new HashSet<>(Utils.plainFilenamesUnder(stage()));
+        Set<String> removed =
+            new HashSet<>(Utils.plainFilenamesUnder(removal()));
+        for (String s : Utils.plainFilenamesUnder(cwd())) {
+            if (!c.fileToSha().containsKey(s) && !stage.contains(s)
                 && !removed.contains(s)) {
                 GitletException g = new GitletException("There"
                         + " is an untracked file in"
                         + " the way; delete it,"
                         + " or add and commit it first.");
-                System.out.println(g.getMessage());
-                System.exit(0);
+                throw g;
             }
         }
     }
-    /** finds common ancestor between NAME
-     *  and the current one.
+    /** finds the best common ancestor of the commit NAME and the
+     *  current one, using the commit graph.
      *  @return Commit*/
     public Commit ancestor(String name) {
         Commit c = getCommit(name);
-        Commit aHead = getCommit(active(), activeBranch().name());
-        ArrayList<String> ancestorsBranch = ancestorDistance(c);
-        ArrayList<Commit> front = new ArrayList<>();
-        front.add(aHead);
-        while (aHead != null) {
-            for (int i = 0; i < front.size(); i++) {
-                if (ancestorsBranch.contains(front.get(i).sha1())) {
-                    return front.get(i);
-                }
-            }
-            int a = front.size();
-            for (int i = 0; i < a; i++) {
-                Commit holder = front.get(i);
-                front.remove(front.get(i));
-                front.add(i, getCommit(holder.parent()));
-                if (holder.parent2() != null) {
-                    front.add(getCommit(holder.parent2()));
-                }
-            }
-        }
-        return null;
-    }
-
-    /** returns an arraylist of ancestors of START.
-     * @return ArrayList*/
-    public ArrayList<String> ancestorDistance(Commit start) {
-        ArrayList<String> distance = new ArrayList<String>();
-        distance.add(start.sha1());
-        while (start != null) {
-            Commit parent = getCommit(start.parent());
-            Commit parent2 = getCommit(start.parent2());
-            if (parent != null) {
-                distance.add(parent.sha1());
-            }
-            if (parent2 != null) {
-                distance.add(parent2.sha1());
-            }
-            if (parent2 != null) {
-                ArrayList<String> merge = ancestorDistance(parent2);
-                for (int i = 0; i < merge.size(); i++) {
-                    distance.add(merge.get(i));
-                }
-            }
-            start = parent;
+        if (c == null) {
+            return null;
         }
-        return distance;
+        String base = commitGraph().mergeBase(active(), c.sha1());
+        return base == null ? null : getCommit(base);
     }
     /** gets BLOB from blobs folder.
      * @return blob*/
     public Blob getBlobInBlobs(String blob) {
-        for (String s : Utils.plainFilenamesIn(blobs())) {
-            if (blob.contains(s)) {
-                File f = Utils.join(blobs(), s);
-                return Utils.readObject(f, Blob.class);
+        if (blob == null) {
+            return null;
+        }
+        Blob b = objectCache().get(blob, Blob.class);
+        if (b == null) {
+            b = ObjectCodec.readBlob(blob, blobStore());
+            if (b != null) {
+                objectCache().put(blob, b, b.weight());
             }
         }
-        return null;
+        return b;
     }
-    /** adds BLOB to blobs directory. */
-    public void addBlob(Blob blob) throws IOException {
-        File f = Utils.join(blobs(), blob.sha1());
-        f.createNewFile();
-        Utils.writeObject(f, blob);
+    /** stores the contents of F in the blobs directory as a blob
+     * for the file NAME.
+     * @return the stored blob. */
+    public Blob addBlob(File f, String name) {
+        return ObjectCodec.writeBlob(blobStore(), f, name, compression());
     }
     /** loads BRANCH.
      * @return Branch*/
     public Branch getBranch(String branch) {
-        File branchFolder = Utils.join(branches(), branch);
-        if (!branchFolder.exists()) {
+        String head = refs().get(branch);
+        if (head == null) {
             GitletException g = new GitletException("A "
                     + "branch with that name does not exist.");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
-        File branchMeta = Utils.join(branchFolder, "branchMeta");
-        return Utils.readObject(branchMeta, Branch.class);
+        return new Branch(branch, head);
     }
-    /** load commit in BRANCH folder for SHA1.
+    /** loads the head commit of the branch checked out.
      * @return Commit*/
-    public Commit getCommit(String sha1, String branch) {
-        if (sha1 == null) {
-            return null;
-        }
-        File f = Utils.join(branches(), branch);
-        File f1 = Utils.join(f, sha1);
-        if (!f1.exists()) {
+    public Commit head() {
+        Commit c = getCommit(active());
+        if (c == null) {
             GitletException g = new GitletException("No"
                     + " commit with that id exists.");
-            System.out.println(g.getMessage());
-            System.exit(0);
+            throw g;
         }
-        return Utils.readObject(f1, Commit.class);
+        return c;
     }
-    /** loads commit with hash SHA1.
+    /** loads commit with hash SHA1, which may be abbreviated.
      * @return Commit */
     public Commit getCommit(String sha1) {
-        Commit r = null;
         if (sha1 == null) {
             return null;
         }
-        for (String s : Utils.plainFilenamesIn(commits())) {
-            if (s.contains(sha1) || s.equals(sha1)) {
-                File f = Utils.join(commits(), s);
-                r = Utils.readObject(f, Commit.class);
-                break;
+        String id = commitIndex().resolve(sha1);
+        if (id == null) {
+            return null;
+        }
+        Commit c = objectCache().get(id, Commit.class);
+        if (c != null) {
+            return c;
+        }
+        File f = Utils.join(commits(), commitIndex().location(id));
+        if (f.isFile()) {
+            return cacheCommit(id, Utils.readContents(f));
+        }
+        byte[] data = packs().read(id);
+        if (data == null) {
+            return null;
+        }
+        return cacheCommit(id, data);
+    }
+    /** decodes the commit SHA1 from its stored form DATA and caches
+     * it.
+     * @return Commit */
+    private Commit cacheCommit(String sha1, byte[] data) {
+        Commit c = ObjectCodec.decodeCommit(Compression.decompress(data));
+        c.attach(blobStore(), files -> objectCache().grow(sha1, c, files));
+        objectCache().put(sha1, c, c.weight());
+        return c;
+    }
+    /** opens a stream over the stored form of the commit or blob
+     * SHA1, reading its loose file if there is one.
+     * @return InputStream, or null if there is no such object. */
+    InputStream openObject(String sha1) throws IOException {
+        String location = commitIndex().location(sha1);
+        if (location != null) {
+            File f = Utils.join(commits(), location);
+            if (f.isFile()) {
+                return new FileInputStream(f);
+            }
+        }
+        return blobStore().open(sha1);
+    }
+    /** returns the head of every branch. */
+    List<String> tips() {
+        ArrayList<String> tips = new ArrayList<>();
+        tips.add(active());
+        for (String name : refs().names()) {
+            tips.add(refs().get(name));
+        }
+        return tips;
+    }
+    /** adds the ids of every commit reachable from one of TIPS to
+     * COMMITS and the ids of the blobs and trees they track to BLOBS.
+     * The commits are marked in a bitmap over the commit graph, and
+     * then each is read once for its tree. */
+    void reachable(List<String> tips, Set<String> commits,
+                   Set<String> blobs) {
+        CommitGraph graph = commitGraph();
+        BitSet marked = graph.reachable(tips);
+        for (int k = marked.nextSetBit(0); k >= 0;
+             k = marked.nextSetBit(k + 1)) {
+            Commit c = getCommit(graph.id(k));
+            if (c == null) {
+                continue;
+            }
+            commits.add(c.sha1());
+            if (c.tree() == null) {
+                blobs.addAll(c.fileToSha().values());
+            } else {
+                Tree.collect(blobStore(), c.tree(), blobs);
+            }
+        }
+    }
+    /** writes every object reachable from a branch, together with
+     * everything already packed, into one new pack, then removes the
+     * old packs and the loose copies of what was packed. */
+    public void repack() {
+        TreeSet<String> commits = new TreeSet<>();
+        TreeSet<String> blobs = new TreeSet<>();
+        reachable(tips(), commits, blobs);
+        TreeSet<String> packed = new TreeSet<>();
+        for (PackFile p : packs().list()) {
+            packed.addAll(p.ids());
+        }
+        repack(commits, blobs, packed);
+    }
+    /** writes the COMMITS and the blobs and trees BLOBS, loose or
+     * packed, and the packed objects KEEP into one new pack, then
+     * removes the old packs and the loose copies of COMMITS and
+     * BLOBS. The new pack is in place before anything is removed, so
+     * readers always find each of these objects somewhere. */
+    private void repack(Set<String> commits, Set<String> blobs,
+                        Set<String> keep) {
+        TreeSet<String> ids = new TreeSet<>(commits);
+        ids.addAll(blobs);
+        ids.addAll(keep);
+        List<PackFile> old = new ArrayList<>(packs().list());
+        if (ids.isEmpty()) {
+            return;
+        }
+        PackFile pack = PackFile.write(packs().dir(), new ArrayList<>(ids),
+                this::openObject, deltaBases(commits));
+        for (PackFile p : old) {
+            if (!p.file().equals(pack.file())) {
+                String name = p.file().getName();
+                p.file().delete();
+                Utils.join(packs().dir(), name.substring(0,
+                        name.length() - ".pack".length()) + ".idx").delete();
+            }
+        }
+        packs().reload();
+        for (String id : commits) {
+            Utils.join(commits(), commitIndex().location(id)).delete();
+        }
+        for (String id : blobs) {
+            blobStore().removeLoose(id);
+        }
+    }
+    /** deletes the commits, blobs and trees that no branch reaches,
+     * unless they were written within the gc.grace setting or are
+     * reached from a commit that was, and repacks the rest. A loose
+     * object's age is that of its file and a packed one's that of its
+     * pack. Nothing is locked: objects still reachable are packed
+     * before their loose copies go, and the commit index is replaced
+     * whole.
+     * @return a summary of what was removed. */
+    public String gc() {
+        long cutoff = System.currentTimeMillis() - config().grace();
+        TreeSet<String> commits = new TreeSet<>();
+        TreeSet<String> blobs = new TreeSet<>();
+        reachable(tips(), commits, blobs);
+        HashSet<String> young = new HashSet<>();
+        for (PackFile p : packs().list()) {
+            if (p.file().lastModified() >= cutoff) {
+                young.addAll(p.ids());
+            }
+        }
+        ArrayList<String> recent = new ArrayList<>();
+        for (String id : commitIndex().ids()) {
+            File f = Utils.join(commits(), commitIndex().location(id));
+            if (!commits.contains(id) && (f.isFile()
+                    ? f.lastModified() >= cutoff : young.contains(id))) {
+                recent.add(id);
+            }
+        }
+        HashSet<String> kept = new HashSet<>();
+        reachable(recent, kept, kept);
+        HashSet<String> dropped = new HashSet<>();
+        for (String id : commitIndex().ids()) {
+            File f = Utils.join(commits(), commitIndex().location(id));
+            if (!commits.contains(id) && !kept.contains(id) && f.isFile()
+                    && f.lastModified() < cutoff && f.delete()) {
+                dropped.add(id);
+            }
+        }
+        int objects = 0;
+        for (File f : blobStore().dir().listFiles()) {
+            File[] loose = f.isDirectory() ? f.listFiles() : new File[] {f};
+            for (File o : loose) {
+                String id = f.isDirectory() ? f.getName() + o.getName()
+                        : o.getName();
+                if (!blobs.contains(id) && !kept.contains(id)
+                        && o.lastModified() < cutoff && o.delete()) {
+                    objects += 1;
+                }
+            }
+            if (f.isDirectory()) {
+                f.delete();
             }
         }
-        return r;
+        TreeSet<String> keep = new TreeSet<>();
+        for (PackFile p : packs().list()) {
+            for (String id : p.ids()) {
+                if (commits.contains(id) || blobs.contains(id)) {
+                    continue;
+                } else if (young.contains(id) || kept.contains(id)) {
+                    keep.add(id);
+                } else if (commitIndex().contains(id)) {
+                    dropped.add(id);
+                } else {
+                    objects += 1;
+                }
+            }
+        }
+        repack(commits, blobs, keep);
+        if (!dropped.isEmpty()) {
+            commitIndex().retain(id -> !dropped.contains(id));
+            Utils.join(_path, "commitGraph").delete();
+            Utils.join(_path, "messageIndex").delete();
+            _commitGraph = null;
+            _messageIndex = null;
+        }
+        objectCache().clear();
+        return String.format("Removed %d commits and %d objects.",
+                dropped.size(), objects);
+    }
+    /** checks that every stored object matches the id it is stored
+     * under and that every object a commit, tree or branch names is
+     * stored, using all the threads setting allows.
+     * @return the problems found and how fast objects were checked. */
+    public String fsck() throws IOException {
+        return new Fsck(this).run();
+    }
+    /** returns a map from each blob tracked by the COMMITS to the
+     * blob its file held in the commit's first parent, where the two
+     * differ, with no chain of bases longer than PackFile.MAX_CHAIN. */
+    Map<String, String> deltaBases(Set<String> commits) {
+        HashMap<String, String> bases = new HashMap<>();
+        for (String id : commits) {
+            Commit c = getCommit(id);
+            Commit p = c.parent() == null ? null : getCommit(c.parent());
+            if (p == null) {
+                continue;
+            }
+            for (Map.Entry<String, String> e : c.fileToSha().entrySet()) {
+                String old = p.fileToSha().get(e.getKey());
+                if (old != null && !old.equals(e.getValue())) {
+                    bases.putIfAbsent(e.getValue(), old);
+                }
+            }
+        }
+        Delta.limitChains(bases, PackFile.MAX_CHAIN);
+        return bases;
+    }
+    /** replaces every commit id this system holds with its
+     * new id in IDS. */
+    void remapCommits(Map<String, String> ids) {
+        for (String name : refs().names()) {
+            String head = refs().get(name);
+            if (ids.containsKey(head)) {
+                refs().set(name, ids.get(head));
+            }
+        }
+    }
+    /** moves the branches of a repository made before refs, kept in
+     * branch folders and in this system's own fields, into refs. The
+     * folders, with the copies of commits in them, are then deleted.
+     * Does nothing to a repository already upgraded. */
+    void upgradeRefs() {
+        if (!refs().exists()) {
+            File[] dirs = _branches.listFiles();
+            for (File d : dirs == null ? new File[0] : dirs) {
+                File meta = Utils.join(d, "branchMeta");
+                if (meta.isFile()) {
+                    refs().set(d.getName(), ObjectCodec.readBranch(meta)
+                            .head());
+                }
+            }
+            refs().set(_activeBranch.name(), _active);
+            refs().setHead(_activeBranch.name());
+            journal().commit();
+        }
+        if (_branches != null && _branches.isDirectory()) {
+            clear(_branches);
+            _branches.delete();
+        }
+        _branches = null;
+        _activeBranch = null;
+        _active = null;
+    }
+    /** writes this system to GitletObject, unless saves are being
+     * deferred until the next checkpoint. */
+    void save() {
+        if (!_deferSaves) {
+            checkpoint();
+        }
+    }
+    /** writes this system to GitletObject, together with the other
+     * changes in its journal, and the cache of working file hashes to
+     * its file. */
+    void checkpoint() {
+        journal().write("GitletObject", Utils.serialize(this));
+        journal().commit();
+        if (_statIndex != null) {
+            _statIndex.save();
+        }
+    }
+    /** makes save do nothing if DEFER, so that only checkpoints
+     * write this system out. */
+    void deferSaves(boolean defer) {
+        _deferSaves = defer;
     }
     /**return path to .gitlet. */
     public File path() {
@@ -743,6 +1104,88 @@ public class GitletControlSystem implements Serializable {
     public File blobs() {
         return _blobs;
     }
+    /** returns the content-addressed store over the blobs folder. */
+    ObjectStore blobStore() {
+        if (_blobStore == null) {
+            _blobStore = new ObjectStore(_blobs, packs());
+        }
+        return _blobStore;
+    }
+    /** returns the packs holding objects that are not loose. */
+    Packs packs() {
+        if (_packs == null) {
+            _packs = new Packs(Utils.join(_path, "packs"));
+        }
+        return _packs;
+    }
+    /** returns this repository's settings. */
+    Config config() {
+        if (_config == null) {
+            _config = new Config(Utils.join(_path, "config"));
+        }
+        return _config;
+    }
+    /** returns the codec new objects are compressed with. */
+    Compression compression() {
+        return config().compression();
+    }
+    /** sets the repository setting KEY to VALUE. */
+    public void setConfig(String key, String value) {
+        if (key.equals(Config.COMPRESSION)) {
+            Compression.forName(value);
+        }
+        config().set(key, value);
+        if (key.equals(ObjectCache.CAPACITY_KEY)) {
+            _objectCache = null;
+        }
+    }
+    /** returns the cache of decoded commits and blobs, holding up to
+     * the cache.bytes setting. */
+    ObjectCache objectCache() {
+        if (_objectCache == null) {
+            long capacity;
+            try {
+                capacity = Long.parseLong(config().get(
+                        ObjectCache.CAPACITY_KEY, "" + ObjectCache.CAPACITY));
+            } catch (NumberFormatException excp) {
+                capacity = ObjectCache.CAPACITY;
+            }
+            _objectCache = new ObjectCache(capacity);
+        }
+        return _objectCache;
+    }
+    /** returns the cache of working file hashes. */
+    StatIndex statIndex() {
+        if (_statIndex == null) {
+            _statIndex = new StatIndex(Utils.join(path(), "index"),
+                    path().getParentFile());
+        }
+        return _statIndex;
+    }
+    /** returns the index from commit sha1s to commit files. */
+    CommitIndex commitIndex() {
+        if (_commitIndex == null) {
+            _commitIndex = CommitIndex.load(Utils.join(_path, "commitIndex"),
+                    _commits, packs());
+        }
+        return _commitIndex;
+    }
+    /** returns the parents and generation numbers of every commit. */
+    CommitGraph commitGraph() {
+        if (_commitGraph == null) {
+            _commitGraph = CommitGraph.load(Utils.join(_path, "commitGraph"),
+                    commitIndex(), this::getCommit);
+        }
+        return _commitGraph;
+    }
+    /** returns the index of commit messages. */
+    MessageIndex messageIndex() {
+        if (_messageIndex == null) {
+            _messageIndex = MessageIndex.load(Utils.join(_path,
+                    "messageIndex"), commitIndex(), this::getCommit);
+        }
+        return _messageIndex;
+    }
     /** returns the staging directory. */
     public File stage() {
         return _stage;
@@ -751,25 +1194,27 @@ public class GitletControlSystem implements Serializable {
     public File removal() {
         return _removal;
     }
-    /** returns branches folder. */
-    public File branches() {
-        return _branches;
+    /** returns the branches of this system. */
+    Refs refs() {
+        if (_refs == null) {
+            _refs = new Refs(journal());
+        }
+        return _refs;
     }
-    /** returns branches folder. */
-    public Branch activeBranch() {
-        return _activeBranch;
+    /** returns the journal metadata changes are made through. */
+    Journal journal() {
+        if (_journal == null) {
+            _journal = new Journal(_path);
+        }
+        return _journal;
     }
-    /** returns branches folder. */
-    public Branch master() {
-        return _master;
+    /** returns the branch checked out. */
+    public Branch activeBranch() {
+        return getBranch(refs().head());
     }
     /** returns sha1 of head commit. */
     public String active() {
-        return _active;
-    }
-    /** returns list of branch names. */
-    public ArrayList<String> branchNames() {
-        return _branchNames;
+        return refs().get(refs().head());
     }
     /** returns folder of commits. */
     public File commits() {
@@ -777,7 +1222,7 @@ public class GitletControlSystem implements Serializable {
     }
     /** staging area. */
     private File _stage;
-    /** a sha1 of the active head. */
+    /** a sha1 of the active head, in repositories made before refs. */
     private String _active;
     /** the path to this gitlet directory. */
     private File _path;
@@ -785,18 +1230,38 @@ public class GitletControlSystem implements Serializable {
     private ArrayList<String> _staged;
     /** directory of files staged for removal. */
     private File _removal;
-    /** branches directory. */
+    /** branches directory, in repositories made before refs. */
     private File _branches;
-    /** active branch. */
+    /** active branch, in repositories made before refs. */
     private Branch _activeBranch;
-    /** master branch. */
-    private Branch _master;
     /** file that holds blobs. */
     private File _blobs;
     /** list of name of files in stage. */
     private ArrayList<String> _tracked = new ArrayList<>();
-    /** list of names of branches. */
-    private ArrayList<String> _branchNames;
     /** folder that holds each commit ever made. */
     private File _commits;
+    /** store that resolves blob hashes to files in _blobs. */
+    private transient ObjectStore _blobStore;
+    /** index from commit sha1s to files in _commits. */
+    private transient CommitIndex _commitIndex;
+    /** graph of commit parents, or null until first needed. */
+    private transient CommitGraph _commitGraph;
+    /** index of commit messages, or null until first needed. */
+    private transient MessageIndex _messageIndex;
+    /** this repository's settings. */
+    private transient Config _config;
+    /** packs holding objects that are not loose. */
+    private transient Packs _packs;
+    /** cache of working file hashes, or null until first needed. */
+    private transient StatIndex _statIndex;
+    /** decoded commits and blobs, or null until first needed. */
+    private transient ObjectCache _objectCache;
+    /** the branches, stored as refs. */
+    private transient Refs _refs;
+    /** the metadata changes not yet committed. */
+    private transient Journal _journal;
+    /** true while saves are deferred until a checkpoint. */
+    private transient boolean _deferSaves;
+    /** pinned so repositories written by earlier versions still load. */
+    private static final long serialVersionUID = -8251986446500205174L;
 }
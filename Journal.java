@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/** Changes to the metadata of a repository: its refs, HEAD and
+ *  GitletObject, and the emptying of the stage by a commit, which
+ *  must land together with the commit's ref. A command records each
+ *  change here instead of writing the file, and what it reads back
+ *  through the journal includes its own changes. When the command is
+ *  done, commit appends all of them to .gitlet/journal as one
+ *  transaction, forces the journal to disk once, then writes each file
+ *  by renaming a new file over it, forces the files and their
+ *  directories, and empties the journal. A command that fails before
+ *  then changes nothing.
+ *
+ *  A transaction is its length, its changes and their CRC-32, so one
+ *  cut short by a crash is recognized and ignored. recover, run before
+ *  a repository is loaded, writes the files of each whole transaction
+ *  left in the journal by a command that died after forcing it. This
+ *  reads only the journal, and writing a file twice is harmless, so a
+ *  recovery that is itself cut short is just run again.
+ *  @author Brandon Byrne
+ */
+class Journal {
+    /** name of the journal in .gitlet. */
+    static final String FILE = "journal";
+    /** change that writes a file. */
+    private static final byte WRITE = 1;
+    /** change that deletes a file. */
+    private static final byte DELETE = 2;
+
+    /** the journal of the repository whose .gitlet directory is
+     * GITLET. */
+    Journal(File gitlet) {
+        _dir = gitlet;
+        _file = Utils.join(gitlet, FILE);
+    }
+
+    /** records that the file PATH, relative to .gitlet, is to hold
+     * CONTENTS. */
+    void write(String path, byte[] contents) {
+        _pending.put(path, contents);
+    }
+
+    /** records that the file PATH, relative to .gitlet, is to be
+     * deleted. */
+    void delete(String path) {
+        _pending.put(path, null);
+    }
+
+    /** returns a copy of the changes recorded since the last commit,
+     * for restore. */
+    Map<String, byte[]> pending() {
+        return new LinkedHashMap<>(_pending);
+    }
+
+    /** replaces the changes recorded since the last commit with
+     * CHANGES, as pending returned them, discarding any recorded
+     * since. */
+    void restore(Map<String, byte[]> changes) {
+        _pending.clear();
+        _pending.putAll(changes);
+    }
+
+    /** returns the contents of the file PATH, relative to .gitlet, as
+     * the changes recorded so far leave it, or null if it does not
+     * exist. */
+    byte[] read(String path) {
+        if (_pending.containsKey(path)) {
+            return _pending.get(path);
+        }
+        File f = Utils.join(_dir, path);
+        return f.isFile() ? Utils.readContents(f) : null;
+    }
+
+    /** returns the names of the files in the directory DIR, relative to
+     * .gitlet, as the changes recorded so far leave it, in sorted
+     * order. */
+    List<String> list(String dir) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> files = Utils.plainFilenamesIn(Utils.join(_dir, dir));
+        if (files != null) {
+            names.addAll(files);
+        }
+        String prefix = dir + "/";
+        for (Map.Entry<String, byte[]> e : _pending.entrySet()) {
+            String path = e.getKey();
+            if (!path.startsWith(prefix)
+                    || path.indexOf('/', prefix.length()) >= 0) {
+                continue;
+            }
+            if (e.getValue() == null) {
+                names.remove(path.substring(prefix.length()));
+            } else {
+                names.add(path.substring(prefix.length()));
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** makes the changes recorded so far durable with one write and one
+     * force of the journal, then applies them. */
+    void commit() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        byte[] changes = encode(_pending);
+        CRC32 crc = new CRC32();
+        crc.update(changes);
+        ByteBuffer tx = ByteBuffer.allocate(changes.length + 12);
+        tx.putInt(changes.length).put(changes).putLong(crc.getValue());
+        tx.flip();
+        try (FileChannel ch = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (tx.hasRemaining()) {
+                ch.write(tx);
+            }
+            ch.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        apply(_dir, _pending);
+        _pending.clear();
+        _file.delete();
+    }
+
+    /** writes the files of every whole transaction in the journal of
+     * the repository whose .gitlet directory is GITLET, in order, then
+     * empties it. */
+    static void recover(File gitlet) {
+        File file = Utils.join(gitlet, FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 0 || in.remaining() < length + 8) {
+                break;
+            }
+            byte[] changes = new byte[length];
+            in.get(changes);
+            CRC32 crc = new CRC32();
+            crc.update(changes);
+            if (crc.getValue() != in.getLong()) {
+                break;
+            }
+            apply(gitlet, decode(changes));
+        }
+        file.delete();
+    }
+
+    /** returns CHANGES, from paths to contents or null, as bytes. */
+    private static byte[] encode(Map<String, byte[]> changes) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Map.Entry<String, byte[]> e : changes.entrySet()) {
+                if (e.getValue() == null) {
+                    out.writeByte(DELETE);
+                    out.writeUTF(e.getKey());
+                } else {
+                    out.writeByte(WRITE);
+                    out.writeUTF(e.getKey());
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding journal.");
+        }
+    }
+
+    /** returns the changes encoded in DATA. */
+    private static Map<String, byte[]> decode(byte[] data) {
+        LinkedHashMap<String, byte[]> changes = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data))) {
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                String path = in.readUTF();
+                if (type == DELETE) {
+                    changes.put(path, null);
+                } else if (type == WRITE) {
+                    byte[] contents = new byte[in.readInt()];
+                    in.readFully(contents);
+                    changes.put(path, contents);
+                } else {
+                    throw Utils.error("Corrupt journal.");
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt journal.");
+        }
+        return changes;
+    }
+
+    /** makes the files below the directory DIR as CHANGES say, each by
+     * renaming a new file, written in DIR itself and forced to disk,
+     * over it. The directories changed are forced last, so that the
+     * changes survive a crash once this returns and the journal may be
+     * emptied. */
+    private static void apply(File dir, Map<String, byte[]> changes) {
+        HashSet<File> dirs = new HashSet<>();
+        dirs.add(dir);
+        for (Map.Entry<String, byte[]> e : changes.entrySet()) {
+            File f = Utils.join(dir, e.getKey());
+            dirs.add(f.getParentFile());
+            if (e.getValue() == null) {
+                f.delete();
+                continue;
+            }
+            f.getParentFile().mkdirs();
+            File tmp = null;
+            try {
+                tmp = File.createTempFile("journal", null, dir);
+                try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer b = ByteBuffer.wrap(e.getValue());
+                    while (b.hasRemaining()) {
+                        ch.write(b);
+                    }
+                    ch.force(false);
+                }
+                Files.move(tmp.toPath(), f.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (File d : dirs) {
+            force(d);
+        }
+    }
+
+    /** forces the entries of the directory DIR to disk. Where a
+     * directory cannot be opened to do so, its entries are written when
+     * the system gets to them. */
+    static void force(File dir) {
+        try (FileChannel ch = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** the .gitlet directory. */
+    private final File _dir;
+    /** the journal file. */
+    private final File _file;
+    /** contents of each file changed since the last commit, by path
+     * relative to .gitlet, or null for a deleted file. */
+    private final LinkedHashMap<String, byte[]> _pending =
+        new LinkedHashMap<>();
+}
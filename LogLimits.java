@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/** Limits on the commits log and global-log show, given as options
+ *  after the command: -n COUNT shows at most COUNT commits, and
+ *  --since DATE and --until DATE only show commits made at or after,
+ *  or at or before, DATE. A DATE is yyyy-MM-dd, meaning the start of
+ *  that day, or yyyy-MM-ddTHH:mm:ss, in local time. --abbrev shows
+ *  each commit's id by its shortest unique prefix.
+ *  @author Brandon Byrne
+ */
+class LogLimits {
+    /** no limits at all. */
+    static final LogLimits NONE = new LogLimits();
+
+    /** limits that show every commit. */
+    private LogLimits() {
+        _count = Integer.MAX_VALUE;
+        _since = Long.MIN_VALUE;
+        _until = Long.MAX_VALUE;
+    }
+
+    /** returns the limits given by ARGS from position START on. */
+    static LogLimits parse(String[] args, int start) {
+        LogLimits limits = new LogLimits();
+        int i = start;
+        while (i < args.length) {
+            if (args[i].equals("--abbrev")) {
+                limits._abbrev = true;
+                i += 1;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new GitletException("Incorrect operands.");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-n":
+                try {
+                    limits._count = Integer.parseInt(value);
+                } catch (NumberFormatException excp) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                if (limits._count < 0) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "--since":
+                limits._since = time(value);
+                break;
+            case "--until":
+                limits._until = time(value);
+                break;
+            default:
+                throw new GitletException("Incorrect operands.");
+            }
+            i += 2;
+        }
+        return limits;
+    }
+
+    /** returns true once SHOWN commits have been shown, so that no
+     * more should be. */
+    boolean full(int shown) {
+        return shown >= _count;
+    }
+
+    /** returns true if ids should be abbreviated. */
+    boolean abbrev() {
+        return _abbrev;
+    }
+
+    /** returns true if C was made within the dates. */
+    boolean shows(Commit c) {
+        return c.time() >= _since && c.time() <= _until;
+    }
+
+    /** returns true if C was made before the earliest date shown, so
+     * that a walk back through its parents can stop. */
+    boolean before(Commit c) {
+        return c.time() < _since;
+    }
+
+    /** returns DATE in milliseconds since the epoch. */
+    private static long time(String date) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (date.contains("T")) {
+                return LocalDateTime.parse(date).atZone(zone)
+                        .toInstant().toEpochMilli();
+            }
+            return LocalDate.parse(date).atStartOfDay(zone)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw new GitletException("Incorrect date: " + date);
+        }
+    }
+
+    /** most commits to show. */
+    private int _count;
+    /** earliest time shown, in milliseconds since the epoch. */
+    private long _since;
+    /** latest time shown, in milliseconds since the epoch. */
+    private long _until;
+    /** true if ids are shown abbreviated. */
+    private boolean _abbrev;
+}
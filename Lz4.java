@@ -0,0 +1,292 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 compressor in the style of LZ4. Data is cut into
+ *  blocks of at most BLOCK_SIZE bytes. Each block is written as its
+ *  raw length and its stored length followed by the stored bytes;
+ *  a block that does not shrink is stored as is. A compressed block
+ *  is a series of sequences, each a token byte (literal count in the
+ *  high four bits, match length less MIN_MATCH in the low four), the
+ *  literals, and a two byte offset back to the match. Counts of 15 or
+ *  more continue in following bytes. The last sequence has literals
+ *  only.
+ *  @author Brandon Byrne
+ */
+class Lz4 {
+    /** largest number of bytes compressed as one block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** shortest match worth encoding. */
+    static final int MIN_MATCH = 4;
+    /** matches may not start within this many bytes of the end. */
+    private static final int END_LITERALS = 12;
+    /** number of bits hashed positions are indexed by. */
+    private static final int HASH_BITS = 12;
+    /** largest distance a match may be from its copy. */
+    private static final int MAX_OFFSET = (1 << 16) - 1;
+    /** count stored in a token nibble that continues in later bytes. */
+    private static final int RUN_MASK = 15;
+
+    /** returns the largest size N bytes can compress to. */
+    static int maxCompressedLength(int n) {
+        return n + n / 255 + 16;
+    }
+
+    /** compresses the first N bytes of SRC into DST, which must hold
+     * maxCompressedLength(N) bytes.
+     * @return the number of bytes written to DST. */
+    static int compress(byte[] src, int n, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0, out = 0, i = 0;
+        int limit = n - END_LITERALS;
+        while (i < limit) {
+            int seq = readInt(src, i);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                i += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (i + len < n - MIN_MATCH - 1
+                    && src[ref + len] == src[i + len]) {
+                len += 1;
+            }
+            out = writeSequence(src, anchor, i - anchor, i - ref,
+                    len - MIN_MATCH, dst, out);
+            i += len;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, n - anchor, 0, -1, dst, out);
+    }
+
+    /** writes a sequence of the LITERALS bytes of SRC starting at
+     * START followed by a match MATCH + MIN_MATCH bytes long at
+     * distance OFFSET to DST at OUT. A negative MATCH ends the block.
+     * @return the position in DST after the sequence. */
+    private static int writeSequence(byte[] src, int start, int literals,
+                                     int offset, int match, byte[] dst,
+                                     int out) {
+        int token = Math.min(literals, RUN_MASK) << 4;
+        if (match >= 0) {
+            token |= Math.min(match, RUN_MASK);
+        }
+        dst[out++] = (byte) token;
+        out = writeRun(literals, dst, out);
+        System.arraycopy(src, start, dst, out, literals);
+        out += literals;
+        if (match < 0) {
+            return out;
+        }
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >>> 8);
+        return writeRun(match, dst, out);
+    }
+
+    /** writes the continuation bytes of the count N to DST at OUT.
+     * @return the position in DST after them. */
+    private static int writeRun(int n, byte[] dst, int out) {
+        if (n < RUN_MASK) {
+            return out;
+        }
+        n -= RUN_MASK;
+        while (n >= 255) {
+            dst[out++] = (byte) 255;
+            n -= 255;
+        }
+        dst[out++] = (byte) n;
+        return out;
+    }
+
+    /** decompresses the N bytes of SRC into DST, which must be
+     * exactly as long as the original data. */
+    static void decompress(byte[] src, int n, byte[] dst) throws IOException {
+        int in = 0, out = 0;
+        try {
+            while (true) {
+                int token = src[in++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in >= n) {
+                    break;
+                }
+                int offset = (src[in] & 0xff) | ((src[in + 1] & 0xff) << 8);
+                in += 2;
+                int len = token & RUN_MASK;
+                if (len == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xff;
+                        len += b;
+                    } while (b == 255);
+                }
+                len += MIN_MATCH;
+                for (int ref = out - offset; len > 0; len -= 1) {
+                    dst[out++] = dst[ref++];
+                }
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw new IOException("corrupt lz4 block");
+        }
+        if (out != dst.length) {
+            throw new IOException("corrupt lz4 block");
+        }
+    }
+
+    /** returns the little-endian int in B at I. */
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8)
+                | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+
+    /** A stream that compresses what is written to it in blocks. */
+    static class Output extends OutputStream {
+        /** a stream writing compressed blocks to OUT. */
+        Output(OutputStream out) {
+            _out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_n == _block.length) {
+                flushBlock();
+            }
+            _block[_n++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_n == _block.length) {
+                    flushBlock();
+                }
+                int k = Math.min(len, _block.length - _n);
+                System.arraycopy(b, off, _block, _n, k);
+                _n += k;
+                off += k;
+                len -= k;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            _out.close();
+        }
+
+        /** compresses and writes out the buffered block. */
+        private void flushBlock() throws IOException {
+            if (_n == 0) {
+                return;
+            }
+            int k = compress(_block, _n, _packed);
+            _out.writeInt(_n);
+            if (k >= _n) {
+                _out.writeInt(_n);
+                _out.write(_block, 0, _n);
+            } else {
+                _out.writeInt(k);
+                _out.write(_packed, 0, k);
+            }
+            _n = 0;
+        }
+
+        /** where compressed blocks go. */
+        private final DataOutputStream _out;
+        /** the block being filled. */
+        private final byte[] _block = new byte[BLOCK_SIZE];
+        /** buffer a block is compressed into. */
+        private final byte[] _packed =
+            new byte[maxCompressedLength(BLOCK_SIZE)];
+        /** number of bytes in _block. */
+        private int _n;
+    }
+
+    /** A stream that decompresses blocks written by Output. */
+    static class Input extends InputStream {
+        /** a stream reading compressed blocks from IN. */
+        Input(InputStream in) {
+            _in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return _block[_pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int k = Math.min(len, _block.length - _pos);
+            System.arraycopy(_block, _pos, b, off, k);
+            _pos += k;
+            return k;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** makes sure unread bytes are buffered.
+         * @return false at the end of the stream. */
+        private boolean fill() throws IOException {
+            while (_pos == _block.length) {
+                int raw;
+                try {
+                    raw = _in.readInt();
+                } catch (EOFException e) {
+                    return false;
+                }
+                int stored = _in.readInt();
+                if (raw < 0 || raw > BLOCK_SIZE || stored < 0
+                        || stored > raw) {
+                    throw new IOException("corrupt lz4 stream");
+                }
+                _block = new byte[raw];
+                if (stored == raw) {
+                    _in.readFully(_block);
+                } else {
+                    _in.readFully(_packed, 0, stored);
+                    decompress(_packed, stored, _block);
+                }
+                _pos = 0;
+            }
+            return true;
+        }
+
+        /** where compressed blocks come from. */
+        private final DataInputStream _in;
+        /** the current decompressed block. */
+        private byte[] _block = new byte[0];
+        /** buffer compressed blocks are read into. */
+        private final byte[] _packed = new byte[BLOCK_SIZE];
+        /** position of the next unread byte in _block. */
+        private int _pos;
+    }
+}
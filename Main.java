@@ -1,51 +1,115 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Brandon Byrne
  */
 public class Main {
 
+    /** commands that never change the state saved in GitletObject. */
+    static final Set<String> READ_ONLY =
+        Set.of("log", "global-log", "find", "status", "cache", "diff",
+               "fsck");
+
+    /** commands that take exactly one operand. */
+    static final Set<String> OPERAND = Set.of("commit", "rm", "branch",
+            "rm-branch", "reset", "merge");
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... If a daemon is serving the repository
+     *  in the current directory the command is sent to it, otherwise
+     *  it runs here. */
     public static void main(String... args) throws IOException {
-        GitletException g1;
+        File f = Utils.join(new File(System.getProperty("user.dir")),
+                ".gitlet");
+        if (args != null && args.length > 0 && args[0].equals("daemon")
+                && args.length == 1) {
+            if (!f.exists()) {
+                System.out.println("Not in an initialized Gitlet directory.");
+                return;
+            }
+            try {
+                new Daemon(f).serve();
+            } catch (GitletException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+        if (args != null && args.length > 0 && args[0].equals("batch")
+                && args.length <= 2) {
+            Batch.main(args);
+            return;
+        }
+        if (args != null && args.length > 0
+                && Daemon.forward(f, args, System.out)) {
+            return;
+        }
+        try {
+            execute(args, null);
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /** runs the command ARGS against the repository in the current
+     * directory. G is its state if it is already loaded, or null to
+     * read it from GitletObject. The state is saved again unless the
+     * command only reads it. Errors are thrown as GitletExceptions,
+     * in which case nothing is saved.
+     * @return the state after the command. */
+    static GitletControlSystem execute(String[] args, GitletControlSystem g)
+            throws IOException {
+        g = run(args, g);
+        if (!READ_ONLY.contains(args[0])) {
+            g.save();
+        }
+        return g;
+    }
+
+    /** runs the command ARGS like execute, with state G, but leaves
+     * saving the state to the caller.
+     * @return the state after the command. */
+    static GitletControlSystem run(String[] args, GitletControlSystem g)
+            throws IOException {
         if (args == null || args.length == 0) {
-            g1 = new GitletException("Please enter a command.");
-            System.out.println(g1.getMessage());
-            System.exit(0);
+            throw new GitletException("Please enter a command.");
         }
         boolean error = true;
         File cwd = new File(System.getProperty("user.dir"));
         File f = Utils.join(cwd, ".gitlet");
-        File f1 = Utils.join(f, "GitletObject");
         if (args[0].equals("init")) {
             error = false;
             if (f.exists()) {
-                g1 = new GitletException("Gitlet version-control "
+                throw new GitletException("Gitlet version-control "
                         + "system already exists in the current directory.");
-                System.out.println(g1.getMessage());
-            } else {
-                new GitletControlSystem();
             }
+            new GitletControlSystem();
         }
-        if (!f.exists()) {
-            g1 = new GitletException("Not in an initialized Gitlet directory.");
-            System.out.println(g1.getMessage());
-            System.exit(0);
+        if (g == null) {
+            g = load();
+        }
+        if (OPERAND.contains(args[0]) && args.length != 2) {
+            throw new GitletException("Incorrect operands.");
         }
-        GitletControlSystem g = Utils.readObject(f1, GitletControlSystem.class);
         if (args[0].equals("add")) {
-            g.add(args[1]);
+            if (args.length < 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+            g.add(Arrays.asList(args).subList(1, args.length));
             error = false;
         }
         if (args[0].equals("commit")) {
             if (args[1].equals("")) {
-                g1 = new GitletException("Please enter a commit message.");
-                System.out.println(g1.getMessage());
-                return;
+                throw new GitletException("Please enter a commit message.");
             }
             g.commit(args[1], null);
             error = false;
@@ -55,16 +119,77 @@ public class Main {
             error = false;
         }
         if (args[0].equals("log")) {
-            System.out.println(g.log());
+            LogLimits limits = LogLimits.parse(args, 1);
+            Writer out = stdout();
+            g.log(out, limits);
+            out.write(System.lineSeparator());
+            out.flush();
             error = false;
         }
         error = helper(args, g, error);
-        Utils.writeObject(f1, g);
         if (error) {
-            g1 = new GitletException("No command with that name exists.");
-            System.out.println(g1.getMessage());
+            throw new GitletException("No command with that name exists.");
         }
+        return g;
     }
+
+    /** runs the diff command ARGS against G: gitlet diff [--staged]
+     * [--myers | --histogram] [COMMIT COMMIT]. */
+    static void diff(String[] args, GitletControlSystem g)
+            throws IOException {
+        Diff.Algorithm how = Diff.Algorithm.MYERS;
+        boolean staged = false;
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--staged")) {
+                staged = true;
+            } else if (args[i].equals("--myers")) {
+                how = Diff.Algorithm.MYERS;
+            } else if (args[i].equals("--histogram")) {
+                how = Diff.Algorithm.HISTOGRAM;
+            } else {
+                ids.add(args[i]);
+            }
+        }
+        if (!ids.isEmpty() && (ids.size() != 2 || staged)) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Writer out = stdout();
+        if (!ids.isEmpty()) {
+            g.diff(ids.get(0), ids.get(1), how, out);
+        } else if (staged) {
+            g.diffStaged(how, out);
+        } else {
+            g.diffWorking(how, out);
+        }
+        out.flush();
+    }
+
+    /** returns a buffered writer over the standard output, which
+     * the caller flushes but does not close. */
+    static Writer stdout() {
+        return new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /** returns the state of the repository in the current directory,
+     * read from its GitletObject once any changes a crash left in its
+     * journal are applied, with its branches moved into refs if it was
+     * made before them. */
+    static GitletControlSystem load() {
+        File f = Utils.join(new File(System.getProperty("user.dir")),
+                ".gitlet");
+        if (!f.exists()) {
+            throw new GitletException("Not in an initialized Gitlet "
+                    + "directory.");
+        }
+        Journal.recover(f);
+        GitletControlSystem g = Utils.readObject(Utils.join(f,
+                "GitletObject"), GitletControlSystem.class);
+        g.upgradeRefs();
+        return g;
+    }
+
     /** does stuff with ARGS, G and ERROR.
      * @return boolean */
     public static boolean helper(String[] args, GitletControlSystem g,
@@ -79,28 +204,36 @@ public class Main {
             }
             if (args.length == 4) {
                 if (!args[2].equals("--")) {
-                    GitletException e = new GitletException("I"
-                            + "ncorrect operands.");
-                    System.out.println(e.getMessage());
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
                 g.checkoutFile(args[3], args[1]);
             }
         }
         if (args[0].equals("global-log")) {
             error = false;
-            System.out.println(g.globalLog());
+            LogLimits limits = LogLimits.parse(args, 1);
+            Writer out = stdout();
+            g.globalLog(out, limits);
+            out.write(System.lineSeparator());
+            out.flush();
         }
         if (args[0].equals("find")) {
             error = false;
-            String r = g.find(args[1]);
-            if (r.equals("")) {
-                GitletException g1 = new GitletException("Found no "
-                        + "commit with that message.");
-                System.out.println(g1.getMessage());
-                System.exit(0);
+            MessageIndex.Match how = MessageIndex.Match.SUBSTRING;
+            if (args.length == 3 && args[1].equals("--exact")) {
+                how = MessageIndex.Match.EXACT;
+            } else if (args.length == 3 && args[1].equals("--prefix")) {
+                how = MessageIndex.Match.PREFIX;
+            } else if (args.length != 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+            Writer out = stdout();
+            if (g.find(args[args.length - 1], how, out) == 0) {
+                throw new GitletException("Found no commit with that "
+                        + "message.");
             }
-            System.out.println(r);
+            out.write(System.lineSeparator());
+            out.flush();
         }
         if (args[0].equals("branch")) {
             error = false;
@@ -122,6 +255,36 @@ public class Main {
             error = false;
             g.merge(args[1]);
         }
+        if (args[0].equals("repack")) {
+            error = false;
+            g.repack();
+        }
+        if (args[0].equals("gc")) {
+            error = false;
+            System.out.println(g.gc());
+        }
+        if (args[0].equals("fsck")) {
+            error = false;
+            System.out.println(g.fsck());
+        }
+        if (args[0].equals("diff")) {
+            error = false;
+            diff(args, g);
+        }
+        if (args[0].equals("cache")) {
+            error = false;
+            System.out.println(g.objectCache());
+        }
+        if (args[0].equals("config")) {
+            error = false;
+            if (args.length == 2) {
+                System.out.println(g.config().get(args[1], ""));
+            } else if (args.length == 3) {
+                g.setConfig(args[1], args[2]);
+            } else {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
         return error;
     }
 }
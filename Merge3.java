@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/** Three-way line merges, in the manner of diff3. Both changed
+ *  versions of a file are diffed against the version at the split
+ *  point, and the two lists of edits are walked together, gathering
+ *  edits whose regions of the base overlap or touch into chunks. A
+ *  chunk only one side changed takes that side's lines, as does one
+ *  both sides changed alike. Any other chunk is a conflict, written
+ *  between markers after the lines both sides agree on at its start
+ *  and end are moved out of it, so that a conflict shows only the
+ *  lines that really differ.
+ *
+ *  The merge is written a chunk at a time as it is found.
+ *  @author Brandon Byrne
+ */
+class Merge3 {
+    /** line starting the current branch's side of a conflict. */
+    static final String OURS = "<<<<<<< HEAD\n";
+    /** line between the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** line ending the given branch's side of a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** writes to OUT the merge of OURS and THEIRS, two versions of
+     * BASE, with edits found by HOW. A binary version cannot be merged
+     * by lines, so then both versions are written whole as one
+     * conflict.
+     * @return the number of conflicts written. */
+    static int merge(Writer out, String base, String ours, String theirs,
+                     Diff.Algorithm how) throws IOException {
+        List<String> a = Diff.lines(ours), b = Diff.lines(theirs);
+        if (Diff.isBinary(base) || Diff.isBinary(ours)
+                || Diff.isBinary(theirs)) {
+            writeConflict(out, a, 0, a.size(), b, 0, b.size());
+            return 1;
+        }
+        List<String> o = Diff.lines(base);
+        List<Diff.Edit> ea = Diff.diff(o, a, how), eb = Diff.diff(o, b, how);
+        int conflicts = 0;
+        int k = 0, i = 0, j = 0;
+        while (i < ea.size() || j < eb.size()) {
+            int i0 = i, j0 = j;
+            boolean oursFirst = j == eb.size() || i < ea.size()
+                    && ea.get(i).aBegin() <= eb.get(j).aBegin();
+            Diff.Edit first = oursFirst ? ea.get(i++) : eb.get(j++);
+            int lo = first.aBegin(), hi = first.aEnd();
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < ea.size() && ea.get(i).aBegin() <= hi) {
+                    hi = Math.max(hi, ea.get(i++).aEnd());
+                    grew = true;
+                }
+                if (j < eb.size() && eb.get(j).aBegin() <= hi) {
+                    hi = Math.max(hi, eb.get(j++).aEnd());
+                    grew = true;
+                }
+            }
+            write(out, o, k, lo);
+            k = hi;
+            if (i0 == i) {
+                write(out, b, begin(eb, j0, lo), end(eb, j - 1, hi));
+                continue;
+            }
+            if (j0 == j) {
+                write(out, a, begin(ea, i0, lo), end(ea, i - 1, hi));
+                continue;
+            }
+            int aLo = begin(ea, i0, lo), aHi = end(ea, i - 1, hi);
+            int bLo = begin(eb, j0, lo), bHi = end(eb, j - 1, hi);
+            while (aLo < aHi && bLo < bHi && a.get(aLo).equals(b.get(bLo))) {
+                out.write(a.get(aLo));
+                aLo += 1;
+                bLo += 1;
+            }
+            int common = 0;
+            while (aHi - common > aLo && bHi - common > bLo && a.get(
+                    aHi - common - 1).equals(b.get(bHi - common - 1))) {
+                common += 1;
+            }
+            if (aLo < aHi - common || bLo < bHi - common) {
+                writeConflict(out, a, aLo, aHi - common,
+                        b, bLo, bHi - common);
+                conflicts += 1;
+            }
+            write(out, a, aHi - common, aHi);
+        }
+        write(out, o, k, o.size());
+        return conflicts;
+    }
+
+    /** returns the line of a changed version at which the line LO of
+     * the base falls, given that EDITS.get(FROM) is the first edit of
+     * the chunk starting at LO. */
+    private static int begin(List<Diff.Edit> edits, int from, int lo) {
+        Diff.Edit e = edits.get(from);
+        return e.bBegin() - (e.aBegin() - lo);
+    }
+
+    /** returns the line of a changed version at which the line HI of
+     * the base falls, given that EDITS.get(TO) is the last edit of the
+     * chunk ending at HI. */
+    private static int end(List<Diff.Edit> edits, int to, int hi) {
+        Diff.Edit e = edits.get(to);
+        return e.bEnd() + (hi - e.aEnd());
+    }
+
+    /** writes LINES[FROM, TO) to OUT. */
+    private static void write(Writer out, List<String> lines, int from,
+                              int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(lines.get(i));
+        }
+    }
+
+    /** writes a conflict between A[ALO, AHI) and B[BLO, BHI) to OUT,
+     * each side ending in a newline. */
+    private static void writeConflict(Writer out, List<String> a, int aLo,
+                                      int aHi, List<String> b, int bLo,
+                                      int bHi) throws IOException {
+        out.write(OURS);
+        writeSide(out, a, aLo, aHi);
+        out.write(SEPARATOR);
+        writeSide(out, b, bLo, bHi);
+        out.write(THEIRS);
+    }
+
+    /** writes LINES[FROM, TO) to OUT, ending in a newline. */
+    private static void writeSide(Writer out, List<String> lines, int from,
+                                  int to) throws IOException {
+        write(out, lines, from, to);
+        if (to > from && !lines.get(to - 1).endsWith("\n")) {
+            out.write("\n");
+        }
+    }
+}
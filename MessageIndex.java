@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** The message of every commit, indexed by the words in it, so that
+ *  find can answer without reading any commit or listing any
+ *  directory. A word is a run of letters and digits, compared without
+ *  regard to case. A query is first narrowed to the commits having a
+ *  word it implies and only their messages are then compared with it.
+ *
+ *  The messages are kept in .gitlet/messageIndex as the magic "GMSG"
+ *  followed by an append-only list of records, each the raw sha1 of a
+ *  commit and its message as a length and UTF-8 bytes, so indexing a
+ *  new commit costs one small append. A file without the magic, or
+ *  whose last record was cut short, is rebuilt from the commits.
+ *  @author Brandon Byrne
+ */
+class MessageIndex {
+    /** magic number at the start of the index file. */
+    static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+
+    /** How a query is matched against messages. */
+    enum Match {
+        /** the message is the query. */
+        EXACT,
+        /** the message starts with the query. */
+        PREFIX,
+        /** the message contains the query. */
+        SUBSTRING
+    }
+
+    /** creates an empty index persisted to FILE. */
+    private MessageIndex(File file) {
+        _file = file;
+        _messages = new HashMap<>();
+        _words = new TreeMap<>();
+    }
+
+    /** loads the index stored in FILE, then adds any commit in INDEX
+     * it is missing, reading those with COMMITS.
+     * @return MessageIndex */
+    static MessageIndex load(File file, CommitIndex index,
+                             Function<String, Commit> commits) {
+        MessageIndex messages = new MessageIndex(file);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                byte[] magic = new byte[MAGIC.length];
+                if (file.length() > 0) {
+                    in.readFully(magic);
+                    if (!Arrays.equals(magic, MAGIC)) {
+                        throw new IOException("old message index");
+                    }
+                }
+                byte[] id = new byte[ObjectCodec.HASH_BYTES];
+                for (int b = in.read(); b >= 0; b = in.read()) {
+                    id[0] = (byte) b;
+                    in.readFully(id, 1, id.length - 1);
+                    messages.put(ObjectCodec.bytesToHex(id),
+                            ObjectCodec.readString(in));
+                }
+            } catch (IOException excp) {
+                file.delete();
+                return load(file, index, commits);
+            }
+        }
+        for (String id : index.ids()) {
+            if (!messages._messages.containsKey(id)) {
+                Commit c = commits.apply(id);
+                if (c != null) {
+                    messages.add(id, c.msg());
+                }
+            }
+        }
+        return messages;
+    }
+
+    /** records that the commit ID has message MSG and appends the
+     * record to the index file. */
+    void add(String id, String msg) {
+        if (_messages.containsKey(id)) {
+            return;
+        }
+        put(id, msg);
+        boolean empty = _file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            if (empty) {
+                out.write(MAGIC);
+            }
+            out.write(ObjectCodec.hexToBytes(id));
+            ObjectCodec.writeString(out, msg);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns the ids of the commits whose message matches QUERY
+     * as HOW says, in sorted order. */
+    TreeSet<String> find(String query, Match how) {
+        TreeSet<String> found = new TreeSet<>();
+        for (String id : candidates(query, how)) {
+            String msg = _messages.get(id);
+            if (how == Match.EXACT ? msg.equals(query)
+                    : how == Match.PREFIX ? msg.startsWith(query)
+                    : msg.contains(query)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /** returns the commits whose messages may match QUERY as HOW
+     * says: every one that does, and perhaps others. A word of QUERY
+     * that is bounded on both sides, by a separator or by an end of
+     * the message that HOW anchors, must be a word of the message; one
+     * bounded on its left must start one. */
+    private Iterable<String> candidates(String query, Match how) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return _messages.keySet();
+        }
+        int n = words.size();
+        boolean startsWord = isWordChar(query.charAt(0));
+        boolean endsWord = isWordChar(query.charAt(query.length() - 1));
+        String prefix = null;
+        for (int i = 0; i < n; i += 1) {
+            boolean left = i > 0 || !startsWord || how != Match.SUBSTRING;
+            boolean right = i < n - 1 || !endsWord || how == Match.EXACT;
+            if (left && right) {
+                return _words.getOrDefault(words.get(i), Set.of());
+            }
+            if (left && prefix == null) {
+                prefix = words.get(i);
+            }
+        }
+        if (prefix != null) {
+            return withPrefix(prefix);
+        }
+        HashSet<String> ids = new HashSet<>();
+        for (Map.Entry<String, Set<String>> e : _words.entrySet()) {
+            if (e.getKey().contains(words.get(0))) {
+                ids.addAll(e.getValue());
+            }
+        }
+        return ids;
+    }
+
+    /** returns the commits having a word that starts with PREFIX. */
+    private Set<String> withPrefix(String prefix) {
+        HashSet<String> ids = new HashSet<>();
+        String end = prefix + Character.MAX_VALUE;
+        for (Set<String> s : _words.subMap(prefix, end).values()) {
+            ids.addAll(s);
+        }
+        return ids;
+    }
+
+    /** adds the commit ID with message MSG to the in-memory index. */
+    private void put(String id, String msg) {
+        _messages.put(id, msg);
+        for (String w : words(msg)) {
+            _words.computeIfAbsent(w, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    /** returns the words of S, in lower case. */
+    static List<String> words(String s) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= s.length(); i += 1) {
+            boolean in = i < s.length() && isWordChar(s.charAt(i));
+            if (in && start < 0) {
+                start = i;
+            } else if (!in && start >= 0) {
+                words.add(s.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /** returns true if C may be part of a word. */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    /** file the index is persisted to. */
+    private final File _file;
+    /** message of each commit by sha1. */
+    private final HashMap<String, String> _messages;
+    /** the commits having each word. */
+    private final TreeMap<String, Set<String>> _words;
+}
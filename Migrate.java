@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** Converts the Gitlet repository in the current directory, whose
+ *  main program may be invoked as follows:
+ *      java gitlet.Migrate
+ *  Every commit, blob and branch stored with Java serialization is
+ *  rewritten in the binary format of ObjectCodec. A commit's id is
+ *  the sha1 of its encoding, so migrated commits get new ids, and so
+ *  do their descendants, whose parents change; commits that already
+ *  use a tree keep it. Branch heads and the commit index are rewritten
+ *  to match. Branches are moved from branch folders into refs.
+ *
+ *  Nothing is removed while anything still names it: every new commit
+ *  is written first, then the index gains them, then the branches
+ *  move, and only then are the old commits dropped from the index and
+ *  deleted. A migration cut short is finished by running it again, and
+ *  running it on a repository that is already converted changes
+ *  nothing.
+ *  @author Brandon Byrne
+ */
+public class Migrate {
+
+    /** Migrates the repository in the current directory. ARGS is
+     *  ignored. */
+    public static void main(String... args) {
+        File cwd = new File(System.getProperty("user.dir"));
+        File gitlet = Utils.join(cwd, ".gitlet");
+        if (!gitlet.exists()) {
+            GitletException g1 = new GitletException("Not in an "
+                    + "initialized Gitlet directory.");
+            System.out.println(g1.getMessage());
+            System.exit(0);
+        }
+        Journal.recover(gitlet);
+        File f = Utils.join(gitlet, "GitletObject");
+        GitletControlSystem g = Utils.readObject(f, GitletControlSystem.class);
+        Compression z = g.compression();
+        int blobs = migrateBlobs(g.blobStore(), z);
+        ArrayList<File> stale = new ArrayList<>();
+        HashMap<String, String> ids = migrateCommits(g.commits(), z, stale);
+        if (!ids.isEmpty()) {
+            CommitIndex index = CommitIndex.rebuild(
+                    Utils.join(gitlet, "commitIndex"), g.commits(),
+                    g.packs());
+            g.upgradeRefs();
+            g.remapCommits(ids);
+            g.checkpoint();
+            index.retain(id -> !ids.containsKey(id));
+            Utils.join(gitlet, "commitGraph").delete();
+            Utils.join(gitlet, "messageIndex").delete();
+            for (File old : stale) {
+                old.delete();
+            }
+        } else {
+            g.upgradeRefs();
+            g.checkpoint();
+        }
+        System.out.printf("Migrated %d commits and %d blobs.%n",
+                ids.size(), blobs);
+    }
+
+    /** rewrites every legacy blob in STORE in the current format,
+     * compressed with Z, moving blobs from the flat layout into fan-out
+     * directories.
+     * @return the number of blobs rewritten. */
+    static int migrateBlobs(ObjectStore store, Compression z) {
+        int n = 0;
+        for (File f : store.dir().listFiles()) {
+            if (f.isFile()) {
+                Blob b = ObjectCodec.decodeBlob(f.getName(),
+                        Utils.readContents(f));
+                store.put(f.getName(),
+                        z.compress(ObjectCodec.encodeBlob(b)));
+                f.delete();
+                n += 1;
+                continue;
+            }
+            for (File o : f.listFiles()) {
+                byte[] data = Utils.readContents(o);
+                if (ObjectCodec.isLegacy(data)) {
+                    String sha1 = f.getName() + o.getName();
+                    Blob b = ObjectCodec.decodeBlob(sha1, data);
+                    Utils.writeContents(o,
+                            z.compress(ObjectCodec.encodeBlob(b)));
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** rewrites, parents before children, every commit in the folder
+     * COMMITS that is stored with Java serialization or whose parents
+     * are rewritten, so that each commit's parents name migrated
+     * commits. Rewritten commits are compressed with Z and stored
+     * under their sha1 alone, as new commits are, beside the old ones;
+     * the file of each commit rewritten is added to STALE for the
+     * caller to delete once nothing names it.
+     * @return map from the old id of each commit rewritten to its new
+     * one. */
+    static HashMap<String, String> migrateCommits(File commits,
+                                                  Compression z,
+                                                  List<File> stale) {
+        HashMap<String, Commit> old = new HashMap<>();
+        HashMap<String, String> names = new HashMap<>();
+        HashSet<String> legacy = new HashSet<>();
+        for (String s : Utils.plainFilenamesIn(commits)) {
+            byte[] data = Compression.decompress(
+                    Utils.readContents(Utils.join(commits, s)));
+            Commit c = ObjectCodec.decodeCommit(data);
+            old.put(c.sha1(), c);
+            names.put(c.sha1(), s);
+            if (ObjectCodec.isLegacy(data)) {
+                legacy.add(c.sha1());
+            }
+        }
+        HashMap<String, String> ids = new HashMap<>();
+        HashSet<String> migrated = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        for (String id : old.keySet()) {
+            work.push(id);
+            while (!work.isEmpty()) {
+                String top = work.peek();
+                Commit c = old.get(top);
+                if (migrated.contains(top)) {
+                    work.pop();
+                } else if (pending(c.parent(), old, migrated)) {
+                    work.push(c.parent());
+                } else if (pending(c.parent2(), old, migrated)) {
+                    work.push(c.parent2());
+                } else {
+                    work.pop();
+                    migrated.add(top);
+                    if (!legacy.contains(top) && !ids.containsKey(c.parent())
+                            && !ids.containsKey(c.parent2())) {
+                        continue;
+                    }
+                    Commit m = rewrite(c, ids);
+                    ObjectCodec.writeCommit(Utils.join(commits, m.sha1()),
+                            m, z);
+                    if (!m.sha1().equals(top)) {
+                        ids.put(top, m.sha1());
+                    }
+                    if (!names.get(top).equals(m.sha1())) {
+                        stale.add(Utils.join(commits, names.get(top)));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** returns true if the commit ID is among OLD but has not been
+     * MIGRATED yet. */
+    private static boolean pending(String id, HashMap<String, Commit> old,
+                                   HashSet<String> migrated) {
+        return id != null && old.containsKey(id)
+                && !migrated.contains(id);
+    }
+
+    /** returns a copy of C whose parents are replaced by the new ids
+     * IDS gives them and whose id is the sha1 of its encoding. A
+     * commit with a tree keeps it; any other keeps its flat map of
+     * files. */
+    private static Commit rewrite(Commit c, HashMap<String, String> ids) {
+        String parent = ids.getOrDefault(c.parent(), c.parent());
+        String parent2 = ids.getOrDefault(c.parent2(), c.parent2());
+        if (c.tree() != null) {
+            return new Commit(c.msg(), parent, parent2, c.branch(),
+                    c.time(), c.tree(), null);
+        }
+        return new Commit(c.msg(), parent, parent2, c.branch(), c.time(),
+                c.fileToSha(), null);
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** Decoded commits and blobs, kept by sha1 so that a command that
+ *  asks for the same object again does not read and decode it again.
+ *  Objects are never changed once stored, so a cached one is never
+ *  stale. Each entry is weighed by an estimate of the memory its
+ *  object takes, which grows when a commit reads its files, and the
+ *  least recently used entries are dropped once their total weight
+ *  passes the capacity. As the weights are estimates, so is the
+ *  bound.
+ *
+ *  The cache may be used from several threads at once.
+ *  @author Brandon Byrne
+ */
+class ObjectCache {
+    /** key naming the capacity of the cache in bytes. */
+    static final String CAPACITY_KEY = "cache.bytes";
+    /** capacity of the cache when none is configured. */
+    static final long CAPACITY = 1 << 25;
+    /** weight of an entry beyond the bytes its object takes. */
+    static final int OVERHEAD = 64;
+
+    /** an empty cache holding at most CAPACITY bytes. */
+    ObjectCache(long capacity) {
+        _capacity = capacity;
+    }
+
+    /** returns the object cached under SHA1 if it is a TYPE, or
+     * null. */
+    synchronized <T> T get(String sha1, Class<T> type) {
+        Entry e = _entries.get(sha1);
+        if (e == null || !type.isInstance(e._value)) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return type.cast(e._value);
+    }
+
+    /** caches VALUE under SHA1, weighing SIZE bytes, and drops the
+     * least recently used entries until the cache fits again. */
+    synchronized void put(String sha1, Object value, long size) {
+        long weight = size + OVERHEAD;
+        if (weight > _capacity) {
+            return;
+        }
+        Entry old = _entries.put(sha1, new Entry(value, weight));
+        if (old != null) {
+            _size -= old._weight;
+        }
+        _size += weight;
+        shrink();
+    }
+
+    /** adds BY bytes to the weight of VALUE, cached under SHA1, which
+     * has grown since it was cached, and drops the least recently used
+     * entries until the cache fits again. Does nothing if VALUE is no
+     * longer cached. */
+    synchronized void grow(String sha1, Object value, long by) {
+        Entry e = _entries.get(sha1);
+        if (e == null || e._value != value) {
+            return;
+        }
+        e._weight += by;
+        _size += by;
+        shrink();
+    }
+
+    /** drops the least recently used entries until the cache fits. */
+    private void shrink() {
+        Iterator<Entry> lru = _entries.values().iterator();
+        while (_size > _capacity && lru.hasNext()) {
+            _size -= lru.next()._weight;
+            lru.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** drops every entry. */
+    synchronized void clear() {
+        _entries.clear();
+        _size = 0;
+    }
+
+    /** returns the counters of this cache, one per line. */
+    @Override
+    public synchronized String toString() {
+        return String.format("entries: %d%nbytes: %d of %d%nhits: %d%n"
+                + "misses: %d%nevictions: %d", _entries.size(), _size,
+                _capacity, _hits, _misses, _evictions);
+    }
+
+    /** number of lookups that found their object. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** number of lookups that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** number of entries dropped to make room. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** A cached object and its weight. */
+    private static class Entry {
+        /** VALUE weighing WEIGHT bytes. */
+        Entry(Object value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+
+        /** the decoded object. */
+        private final Object _value;
+        /** bytes charged for it. */
+        private long _weight;
+    }
+
+    /** most bytes the entries may weigh together. */
+    private final long _capacity;
+    /** entries by sha1, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** total weight of the entries. */
+    private long _size;
+    /** number of lookups that found their object. */
+    private long _hits;
+    /** number of lookups that did not. */
+    private long _misses;
+    /** number of entries dropped to make room. */
+    private long _evictions;
+}
@@ -0,0 +1,453 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Reads and writes commits, trees, blobs and branches in gitlet's
+ *  binary object format. Every object starts with a four byte header:
+ *  the magic bytes 'G' 'L', the format version and a type byte. Only
+ *  an object's intrinsic fields follow, so a commit holds its parents,
+ *  time, message, branch and the sha1 of its root Tree, and nothing of
+ *  the repository it was made in. Commits written by version 1 hold
+ *  their whole map from file names to blob sha1s instead of a tree;
+ *  they are still read, and written back exactly as they were.
+ *
+ *  Data that starts with the Java serialization magic number is
+ *  decoded as a legacy object written by Utils.writeObject.
+ *  @author Brandon Byrne
+ */
+class ObjectCodec {
+
+    /** first magic byte of every encoded object. */
+    static final byte MAGIC0 = 'G';
+    /** second magic byte of every encoded object. */
+    static final byte MAGIC1 = 'L';
+    /** current version of the format. */
+    static final byte VERSION = 2;
+    /** version of the format whose commits hold a flat file map. */
+    static final byte FLAT_VERSION = 1;
+    /** type byte of a commit. */
+    static final byte COMMIT = 'c';
+    /** type byte of a blob. */
+    static final byte BLOB = 'b';
+    /** type byte of a branch. */
+    static final byte BRANCH = 'r';
+    /** type byte of a tree. */
+    static final byte TREE = 't';
+    /** length of the header every object starts with. */
+    static final int HEADER_LENGTH = 4;
+    /** length of a sha1 stored as raw bytes. */
+    static final int HASH_BYTES = Utils.UID_LENGTH / 2;
+
+    /* COMMITS */
+
+    /** returns C encoded as bytes. The encoding does not contain
+     * C's sha1, which is the sha1 of the encoding itself. */
+    static byte[] encodeCommit(Commit c) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte version = c.tree() == null ? FLAT_VERSION : VERSION;
+            writeHeader(out, COMMIT, version);
+            writeHash(out, c.parent());
+            writeHash(out, c.parent2());
+            out.writeLong(c.time());
+            writeString(out, c.msg());
+            writeString(out, c.branch());
+            if (c.tree() == null) {
+                writeTree(out, c.fileToSha());
+            } else {
+                writeHash(out, c.tree());
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+    }
+
+    /** returns the commit encoded in DATA.
+     * @return Commit */
+    static Commit decodeCommit(byte[] data) {
+        if (isLegacy(data)) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        try {
+            DataInputStream in = open(data, COMMIT);
+            String parent = readHash(in);
+            String parent2 = readHash(in);
+            long time = in.readLong();
+            String msg = readString(in);
+            String branch = readString(in);
+            if (data[2] == FLAT_VERSION) {
+                TreeMap<String, String> files = readTree(in);
+                return new Commit(msg, parent, parent2, branch, time, files,
+                        Utils.sha1(data));
+            }
+            return new Commit(msg, parent, parent2, branch, time,
+                    readHash(in), Utils.sha1(data));
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit object.");
+        }
+    }
+
+    /** returns the commit stored in F, which may be compressed. */
+    static Commit readCommit(File f) {
+        return decodeCommit(Compression.decompress(Utils.readContents(f)));
+    }
+
+    /** writes C to F compressed with Z. */
+    static void writeCommit(File f, Commit c, Compression z) {
+        Utils.writeContentsAtomically(f, z.compress(encodeCommit(c)));
+    }
+
+    /* TREES */
+
+    /** returns a tree with ENTRIES, mapping names to sha1s, encoded
+     * as bytes. */
+    static byte[] encodeTree(Map<String, String> entries) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, TREE);
+            writeTree(out, entries);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+    }
+
+    /** returns the entries of the tree encoded in DATA.
+     * @return TreeMap */
+    static TreeMap<String, String> decodeTree(byte[] data) {
+        try {
+            return readTree(open(data, TREE));
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree object.");
+        }
+    }
+
+    /* BLOBS */
+
+    /** returns B encoded as bytes. */
+    static byte[] encodeBlob(Blob b) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, BLOB);
+            writeString(out, b.name());
+            byte[] contents = b.contents().getBytes(StandardCharsets.UTF_8);
+            out.writeLong(contents.length);
+            out.write(contents);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding blob.");
+        }
+    }
+
+    /** returns the blob with hash SHA1 encoded in DATA.
+     * @return Blob */
+    static Blob decodeBlob(String sha1, byte[] data) {
+        if (isLegacy(data)) {
+            return Utils.deserialize(data, Blob.class);
+        }
+        try {
+            DataInputStream in = open(data, BLOB);
+            String name = readString(in);
+            byte[] contents = new byte[(int) in.readLong()];
+            in.readFully(contents);
+            return new Blob(name, new String(contents,
+                    StandardCharsets.UTF_8), sha1);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt blob object.");
+        }
+    }
+
+    /** writes the contents of SRC into STORE as a blob for the file
+     * NAME, compressed with Z. SRC is hashed and copied in a single
+     * pass through a fixed-size buffer, so memory use does not depend
+     * on its size.
+     * @return the stored Blob */
+    static Blob writeBlob(ObjectStore store, File src, String name,
+                          Compression z) {
+        File tmp = store.tempFile();
+        MessageDigest md = Utils.sha1Digest();
+        try (InputStream in = new FileInputStream(src);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(z.wrap(new FileOutputStream(tmp)),
+                         Blob.BUFFER_SIZE))) {
+            writeHeader(out, BLOB);
+            writeString(out, name);
+            long size = src.length();
+            out.writeLong(size);
+            byte[] buf = new byte[Blob.BUFFER_SIZE];
+            long total = 0;
+            for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                out.write(buf, 0, n);
+                total += n;
+            }
+            if (total != size) {
+                throw Utils.error("File %s changed while being stored.",
+                        name);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        md.update(name.getBytes(StandardCharsets.UTF_8));
+        String sha1 = bytesToHex(md.digest());
+        store.install(tmp, sha1);
+        return new Blob(name, sha1, store);
+    }
+
+    /** returns the blob with hash SHA1 from STORE, reading only its
+     * header; the contents stay on disk until they are opened.
+     * @return Blob, or null if STORE does not have it. */
+    static Blob readBlob(String sha1, ObjectStore store) {
+        InputStream raw = store.open(sha1);
+        if (raw == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                Compression.open(raw))) {
+            byte[] header = new byte[HEADER_LENGTH];
+            in.readFully(header);
+            if (isLegacy(header)) {
+                return decodeBlob(sha1, store.get(sha1));
+            }
+            check(header, BLOB);
+            return new Blob(readString(in), sha1, store);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt blob object.");
+        }
+    }
+
+    /** opens a stream over the contents of the blob SHA1 in STORE.
+     * @return InputStream positioned at the first byte of contents. */
+    static InputStream openBlob(String sha1, ObjectStore store)
+            throws IOException {
+        InputStream raw = store.open(sha1);
+        if (raw == null) {
+            throw new IOException("missing blob " + sha1);
+        }
+        DataInputStream in = new DataInputStream(Compression.open(raw));
+        byte[] header = new byte[HEADER_LENGTH];
+        in.readFully(header);
+        if (isLegacy(header)) {
+            in.close();
+            return decodeBlob(sha1, store.get(sha1)).open();
+        }
+        check(header, BLOB);
+        readString(in);
+        in.readLong();
+        return in;
+    }
+
+    /* BRANCHES */
+
+    /** returns B encoded as bytes. */
+    static byte[] encodeBranch(Branch b) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, BRANCH);
+            writeString(out, b.name());
+            writeHash(out, b.head());
+            writeHash(out, b.parent());
+            writeHash(out, b.sha1());
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding branch.");
+        }
+    }
+
+    /** returns the branch encoded in DATA.
+     * @return Branch */
+    static Branch decodeBranch(byte[] data) {
+        if (isLegacy(data)) {
+            return Utils.deserialize(data, Branch.class);
+        }
+        try {
+            DataInputStream in = open(data, BRANCH);
+            String name = readString(in);
+            String head = readHash(in);
+            String parent = readHash(in);
+            String sha1 = readHash(in);
+            return new Branch(name, head, parent, sha1);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt branch object.");
+        }
+    }
+
+    /** returns the branch stored in F. */
+    static Branch readBranch(File f) {
+        return decodeBranch(Utils.readContents(f));
+    }
+
+    /* FORMAT DETAILS */
+
+    /** returns true if DATA was written by Java serialization. */
+    static boolean isLegacy(byte[] data) {
+        return data.length >= 2
+                && data[0] == (byte) 0xac && data[1] == (byte) 0xed;
+    }
+
+    /** returns the type byte of the object in DATA, or 0 if DATA
+     * is not in this format. */
+    static byte type(byte[] data) {
+        if (data.length < HEADER_LENGTH
+                || data[0] != MAGIC0 || data[1] != MAGIC1) {
+            return 0;
+        }
+        return data[3];
+    }
+
+    /** writes the header of an object of type TYPE to OUT. */
+    private static void writeHeader(DataOutputStream out, byte type)
+            throws IOException {
+        writeHeader(out, type, VERSION);
+    }
+
+    /** writes the header of an object of type TYPE in format version
+     * VERSION to OUT. */
+    private static void writeHeader(DataOutputStream out, byte type,
+                                    byte version) throws IOException {
+        out.writeByte(MAGIC0);
+        out.writeByte(MAGIC1);
+        out.writeByte(version);
+        out.writeByte(type);
+    }
+
+    /** checks that HEADER starts an object of type TYPE written by
+     * this or an earlier version of the format. */
+    private static void check(byte[] header, byte type) throws IOException {
+        if (type(header) != type) {
+            throw new IOException("wrong object type");
+        }
+        if (header[2] > VERSION) {
+            throw Utils.error("Object written by a newer version of "
+                    + "gitlet.");
+        }
+    }
+
+    /** returns a stream over DATA positioned after its header,
+     * checking that DATA holds an object of type TYPE. */
+    private static DataInputStream open(byte[] data, byte type)
+            throws IOException {
+        check(data, type);
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(HEADER_LENGTH);
+        return in;
+    }
+
+    /** writes S, which may be null, to OUT. */
+    static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** reads a string written by writeString from IN.
+     * @return String */
+    static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) {
+            return null;
+        }
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** writes the hexadecimal sha1 SHA1, which may be null, to OUT
+     * as raw bytes. */
+    static void writeHash(DataOutputStream out, String sha1)
+            throws IOException {
+        if (sha1 == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.write(hexToBytes(sha1));
+    }
+
+    /** reads a sha1 written by writeHash from IN.
+     * @return String */
+    static String readHash(DataInputStream in) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        byte[] b = new byte[HASH_BYTES];
+        in.readFully(b);
+        return bytesToHex(b);
+    }
+
+    /** writes the tree FILES, mapping file names to blob sha1s,
+     * to OUT in name order. */
+    static void writeTree(DataOutputStream out, Map<String, String> files)
+            throws IOException {
+        TreeMap<String, String> sorted = new TreeMap<>(files);
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            writeString(out, e.getKey());
+            out.write(hexToBytes(e.getValue()));
+        }
+    }
+
+    /** reads a tree written by writeTree from IN.
+     * @return TreeMap */
+    static TreeMap<String, String> readTree(DataInputStream in)
+            throws IOException {
+        TreeMap<String, String> files = new TreeMap<>();
+        int n = in.readInt();
+        byte[] b = new byte[HASH_BYTES];
+        for (int i = 0; i < n; i++) {
+            String name = readString(in);
+            in.readFully(b);
+            files.put(name, bytesToHex(b));
+        }
+        return files;
+    }
+
+    /** returns the bytes of the hexadecimal numeral HEX. */
+    static byte[] hexToBytes(String hex) {
+        byte[] b = new byte[hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2),
+                    16);
+        }
+        return b;
+    }
+
+    /** returns B as a lowercase hexadecimal numeral. */
+    static String bytesToHex(byte[] b) {
+        StringBuilder r = new StringBuilder(2 * b.length);
+        for (byte x : b) {
+            r.append(Character.forDigit((x >> 4) & 0xf, 16));
+            r.append(Character.forDigit(x & 0xf, 16));
+        }
+        return r.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/** A content-addressed store of objects. Each loose object is kept
+ *  in a fan-out subdirectory named for the first two characters
+ *  of its sha1, so an object with hash abcdef... lives at
+ *  DIR/ab/cdef..., and finding it never requires listing DIR.
+ *  Objects that are not loose are looked for in the repository's
+ *  packs.
+ *  @author Brandon Byrne
+ */
+class ObjectStore {
+    /** number of leading hash characters used as the fan-out
+     * directory name. */
+    static final int FANOUT = 2;
+
+    /** creates a store rooted at DIR that also reads from PACKS. */
+    ObjectStore(File dir, Packs packs) {
+        _dir = dir;
+        _packs = packs;
+    }
+
+    /** gets the file an object with hash SHA1 is stored in.
+     * @return File */
+    File path(String sha1) {
+        return Utils.join(_dir, sha1.substring(0, FANOUT),
+                sha1.substring(FANOUT));
+    }
+
+    /** gets the file an object with hash SHA1 was stored in before
+     * the store used fan-out directories.
+     * @return File */
+    File legacyPath(String sha1) {
+        return Utils.join(_dir, sha1);
+    }
+
+    /** returns true if an object with hash SHA1 is in this store. */
+    boolean contains(String sha1) {
+        return sha1 != null && (locate(sha1) != null
+                || _packs.contains(sha1));
+    }
+
+    /** finds the file holding the object with hash SHA1.
+     * @return File, or null if there is no such object. */
+    File locate(String sha1) {
+        if (sha1.length() <= FANOUT) {
+            return null;
+        }
+        File f = path(sha1);
+        if (f.isFile()) {
+            return f;
+        }
+        f = legacyPath(sha1);
+        if (f.isFile()) {
+            return f;
+        }
+        return null;
+    }
+
+    /** stores the encoded object DATA under SHA1 unless an object
+     * with that hash is already stored. The object is written to a
+     * temporary file first, so concurrent writers never see it half
+     * written. */
+    void put(String sha1, byte[] data) {
+        if (path(sha1).isFile()) {
+            return;
+        }
+        File tmp = tempFile();
+        Utils.writeContents(tmp, data);
+        install(tmp, sha1);
+    }
+
+    /** creates an empty temporary file in this store that an object
+     * can be written to before its hash is known.
+     * @return File */
+    File tempFile() {
+        try {
+            return File.createTempFile("tmp", null, _dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** moves the object written to the temporary file TMP into place
+     * as the object with hash SHA1, or discards TMP if that object is
+     * already stored. Another writer installing the same object at
+     * the same time is harmless, as both copies are the same. */
+    void install(File tmp, String sha1) {
+        File f = path(sha1);
+        if (f.isFile()) {
+            tmp.delete();
+            return;
+        }
+        f.getParentFile().mkdir();
+        try {
+            Files.move(tmp.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** loads the stored object with hash SHA1.
+     * @return the object's bytes, or null if it is not in this store. */
+    byte[] get(String sha1) {
+        if (sha1 == null) {
+            return null;
+        }
+        File f = locate(sha1);
+        if (f == null) {
+            return _packs.read(sha1);
+        }
+        return Utils.readContents(f);
+    }
+
+    /** opens a stream over the stored object with hash SHA1, which
+     * is read from its loose file if there is one.
+     * @return InputStream, or null if it is not in this store. */
+    InputStream open(String sha1) {
+        File f = locate(sha1);
+        if (f == null) {
+            return _packs.open(sha1);
+        }
+        try {
+            return new FileInputStream(f);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** removes the loose copy of the object SHA1, if any, and its
+     * fan-out directory once that is empty. A copy kept at its legacy
+     * path has no fan-out directory, and DIR itself is never
+     * removed. */
+    void removeLoose(String sha1) {
+        File f = locate(sha1);
+        if (f != null) {
+            f.delete();
+            if (!f.getParentFile().equals(_dir)) {
+                f.getParentFile().delete();
+            }
+        }
+    }
+
+    /** returns the directory this store is rooted at. */
+    File dir() {
+        return _dir;
+    }
+
+    /** directory holding the fan-out subdirectories. */
+    private File _dir;
+    /** packs searched for objects that are not loose. */
+    private Packs _packs;
+}
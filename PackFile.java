@@ -0,0 +1,393 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A pack: many stored objects in one file, NAME.pack, with a sorted
+ *  index of where each one starts in NAME.idx. Both files are mapped
+ *  into memory and an object is found by binary search of the index,
+ *  so reading it needs no directory lookups at all.
+ *
+ *  The pack is the magic "GPAK" followed by its entries. Each entry
+ *  is a kind byte and then either the object exactly as it would be
+ *  stored loose, compression and all, or the raw sha1 of another
+ *  object in the same pack followed by a Delta that rebuilds this
+ *  object's uncompressed encoding from that base's. The index is the
+ *  magic "GIDX", the number of entries, and then one fixed-size record
+ *  per entry in sha1 order: the raw sha1 and the entry's offset and
+ *  length in the pack.
+ *
+ *  Objects may be read from several threads at once.
+ *  @author Brandon Byrne
+ */
+class PackFile {
+    /** magic number at the start of a pack. */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** magic number at the start of an index. */
+    static final int INDEX_MAGIC = 0x47494458;
+    /** kind byte of an entry holding a whole stored object. */
+    static final byte WHOLE = 0;
+    /** kind byte of an entry holding a delta against a base. */
+    static final byte DELTA = 1;
+    /** largest number of deltas an object may be rebuilt through. */
+    static final int MAX_CHAIN = 10;
+    /** total size of the rebuilt delta bases kept in memory. */
+    static final int BASE_CACHE_BYTES = 1 << 24;
+    /** length of the header of an index. */
+    private static final int INDEX_HEADER = 8;
+    /** length of one index record. */
+    private static final int RECORD = ObjectCodec.HASH_BYTES + 16;
+
+    /** opens the pack in the file PACK and its index. */
+    PackFile(File pack) {
+        _file = pack;
+        String name = pack.getName();
+        File idx = Utils.join(pack.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+        try (RandomAccessFile p = new RandomAccessFile(pack, "r");
+             RandomAccessFile i = new RandomAccessFile(idx, "r")) {
+            _index = i.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    i.length());
+            if (p.length() <= Integer.MAX_VALUE) {
+                _pack = p.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                        p.length());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != INDEX_MAGIC) {
+            throw Utils.error("Corrupt pack index %s.", idx.getName());
+        }
+        _count = _index.getInt(4);
+    }
+
+    /** returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** returns the pack file itself. */
+    File file() {
+        return _file;
+    }
+
+    /** returns the sha1 of the K-th object in sha1 order. */
+    String id(int k) {
+        byte[] b = new byte[ObjectCodec.HASH_BYTES];
+        _index.get(INDEX_HEADER + k * RECORD, b);
+        return ObjectCodec.bytesToHex(b);
+    }
+
+    /** returns the sha1 of every object in this pack, in order. */
+    List<String> ids() {
+        ArrayList<String> r = new ArrayList<>(_count);
+        for (int k = 0; k < _count; k += 1) {
+            r.add(id(k));
+        }
+        return r;
+    }
+
+    /** finds the position in the index of the object SHA1.
+     * @return int, or -1 if it is not in this pack. */
+    int find(String sha1) {
+        if (sha1 == null || sha1.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = ObjectCodec.hexToBytes(sha1);
+        byte[] b = new byte[ObjectCodec.HASH_BYTES];
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            _index.get(INDEX_HEADER + mid * RECORD, b);
+            int c = compare(b, key);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** returns true if the object SHA1 is in this pack. */
+    boolean contains(String sha1) {
+        return find(sha1) >= 0;
+    }
+
+    /** returns the entry for the object SHA1, starting with its kind
+     * byte, or null if it is not in this pack. */
+    ByteBuffer entry(String sha1) {
+        int k = find(sha1);
+        if (k < 0) {
+            return null;
+        }
+        int at = INDEX_HEADER + k * RECORD + ObjectCodec.HASH_BYTES;
+        long offset = _index.getLong(at);
+        long length = _index.getLong(at + 8);
+        if (_pack != null) {
+            return _pack.slice((int) offset, (int) length);
+        }
+        try (RandomAccessFile p = new RandomAccessFile(_file, "r")) {
+            return p.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    offset, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** returns the object SHA1 as it would be stored loose, or null
+     * if it is not in this pack. An object stored as a delta is
+     * returned uncompressed. */
+    byte[] read(String sha1) {
+        ByteBuffer e = entry(sha1);
+        if (e == null) {
+            return null;
+        }
+        if (e.get() == DELTA) {
+            return rebuild(e);
+        }
+        byte[] r = new byte[e.remaining()];
+        e.get(r);
+        return r;
+    }
+
+    /** opens a stream over the object SHA1 as it would be stored
+     * loose, or returns null if it is not in this pack. */
+    InputStream open(String sha1) {
+        ByteBuffer e = entry(sha1);
+        if (e == null) {
+            return null;
+        }
+        if (e.get() == DELTA) {
+            return new ByteArrayInputStream(rebuild(e));
+        }
+        return new BufferStream(e);
+    }
+
+    /** returns the object rebuilt from the delta entry E, which is
+     * positioned after its kind byte. */
+    private byte[] rebuild(ByteBuffer e) {
+        byte[] id = new byte[ObjectCodec.HASH_BYTES];
+        e.get(id);
+        String baseId = ObjectCodec.bytesToHex(id);
+        byte[] base;
+        synchronized (_bases) {
+            base = _bases.get(baseId);
+        }
+        if (base == null) {
+            byte[] stored = read(baseId);
+            if (stored == null) {
+                throw Utils.error("Missing delta base %s.", baseId);
+            }
+            base = Compression.decompress(stored);
+            synchronized (_bases) {
+                if (_bases.put(baseId, base) == null) {
+                    _cached += base.length;
+                }
+                Iterator<byte[]> old = _bases.values().iterator();
+                while (_cached > BASE_CACHE_BYTES && old.hasNext()) {
+                    _cached -= old.next().length;
+                    old.remove();
+                }
+            }
+        }
+        byte[] delta = new byte[e.remaining()];
+        e.get(delta);
+        try {
+            return Delta.apply(base, delta);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt delta in %s.", _file.getName());
+        }
+    }
+
+    /** returns the order of the raw sha1s A and B. */
+    private static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i += 1) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Supplies the stored form of objects being packed. */
+    interface Source {
+        /** opens a stream over the stored form of the object SHA1. */
+        InputStream open(String sha1) throws IOException;
+    }
+
+    /** writes the objects IDS, which must be sorted, read from SOURCE
+     * into a new pack in DIR named for the sha1 of its contents. An
+     * object that BASES maps to another of the IDS is stored as a
+     * delta against it when that is smaller. Both files are forced to
+     * disk and renamed into place, the index first, before this
+     * returns, so the copies packed may then be removed.
+     * @return the new pack. */
+    static PackFile write(File dir, List<String> ids, Source source,
+                          Map<String, String> bases) {
+        dir.mkdir();
+        String name = "pack-" + Utils.sha1(String.join("", ids));
+        File pack = Utils.join(dir, name + ".pack");
+        File idx = Utils.join(dir, name + ".idx");
+        File tmpPack = Utils.join(dir, name + ".pack.tmp");
+        File tmpIdx = Utils.join(dir, name + ".idx.tmp");
+        long[] offsets = new long[ids.size()];
+        long[] lengths = new long[ids.size()];
+        byte[] buf = new byte[Blob.BUFFER_SIZE];
+        try (FileOutputStream file = new FileOutputStream(tmpPack);
+             DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(file, Blob.BUFFER_SIZE))) {
+            out.writeInt(PACK_MAGIC);
+            long pos = 4;
+            for (int k = 0; k < ids.size(); k += 1) {
+                offsets[k] = pos;
+                byte[] delta = delta(ids.get(k), source, bases);
+                if (delta != null) {
+                    out.writeByte(DELTA);
+                    out.write(ObjectCodec.hexToBytes(bases.get(ids.get(k))));
+                    out.write(delta);
+                    lengths[k] = 1 + ObjectCodec.HASH_BYTES + delta.length;
+                    pos += lengths[k];
+                    continue;
+                }
+                out.writeByte(WHOLE);
+                long n = 1;
+                try (InputStream in = source.open(ids.get(k))) {
+                    for (int r = in.read(buf); r > 0; r = in.read(buf)) {
+                        out.write(buf, 0, r);
+                        n += r;
+                    }
+                }
+                lengths[k] = n;
+                pos += n;
+            }
+            out.flush();
+            file.getChannel().force(false);
+        } catch (IOException excp) {
+            tmpPack.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileOutputStream file = new FileOutputStream(tmpIdx);
+             DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(file))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(ids.size());
+            for (int k = 0; k < ids.size(); k += 1) {
+                out.write(ObjectCodec.hexToBytes(ids.get(k)));
+                out.writeLong(offsets[k]);
+                out.writeLong(lengths[k]);
+            }
+            out.flush();
+            file.getChannel().force(false);
+        } catch (IOException excp) {
+            tmpPack.delete();
+            tmpIdx.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmpIdx.toPath(), idx.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpPack.toPath(), pack.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmpPack.delete();
+            tmpIdx.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.force(dir);
+        return new PackFile(pack);
+    }
+
+    /** returns a delta rebuilding the object ID from SOURCE against
+     * its base in BASES, or null if it has none or storing it whole
+     * is as small. */
+    private static byte[] delta(String id, Source source,
+                                Map<String, String> bases)
+            throws IOException {
+        String baseId = bases.get(id);
+        if (baseId == null) {
+            return null;
+        }
+        byte[] stored;
+        byte[] base;
+        try (InputStream in = source.open(id);
+             InputStream b = source.open(baseId)) {
+            stored = in.readNBytes(Delta.MAX_SIZE + 1);
+            base = Compression.decompress(b.readNBytes(Delta.MAX_SIZE + 1));
+        }
+        byte[] target = Compression.decompress(stored);
+        if (stored.length > Delta.MAX_SIZE || target.length > Delta.MAX_SIZE
+                || base.length > Delta.MAX_SIZE) {
+            return null;
+        }
+        byte[] delta = Delta.create(base, target);
+        if (delta.length + ObjectCodec.HASH_BYTES >= stored.length) {
+            return null;
+        }
+        return delta;
+    }
+
+    /** An InputStream over the remaining bytes of a buffer. */
+    private static class BufferStream extends InputStream {
+        /** a stream over the remaining bytes of B. */
+        BufferStream(ByteBuffer b) {
+            _b = b;
+        }
+
+        @Override
+        public int read() {
+            return _b.hasRemaining() ? _b.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!_b.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _b.remaining());
+            _b.get(b, off, n);
+            return n;
+        }
+
+        /** the bytes being read. */
+        private final ByteBuffer _b;
+    }
+
+    /** the pack file. */
+    private final File _file;
+    /** the mapped index. */
+    private MappedByteBuffer _index;
+    /** the mapped pack, or null if it is too large to map at once. */
+    private MappedByteBuffer _pack;
+    /** number of objects in the pack. */
+    private final int _count;
+    /** recently rebuilt delta bases, least recently used first. */
+    private final LinkedHashMap<String, byte[]> _bases =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** total size of the bases in _bases. */
+    private long _cached;
+}
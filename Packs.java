@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The pack files of a repository, kept in one directory. Objects
+ *  are looked up in each pack in turn; callers check loose objects
+ *  first, so objects written since the last repack stay cheap.
+ *  @author Brandon Byrne
+ */
+class Packs {
+    /** the packs in DIR. */
+    Packs(File dir) {
+        _dir = dir;
+    }
+
+    /** returns the directory packs are kept in. */
+    File dir() {
+        return _dir;
+    }
+
+    /** returns every pack, opening them the first time. */
+    synchronized List<PackFile> list() {
+        if (_packs == null) {
+            _stamp = _dir.lastModified();
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_dir);
+            if (names != null) {
+                for (String s : names) {
+                    if (s.endsWith(".pack")) {
+                        _packs.add(new PackFile(Utils.join(_dir, s)));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** forgets the open packs so the directory is read again. */
+    synchronized void reload() {
+        _packs = null;
+    }
+
+    /** forgets the open packs if packs were added or removed since
+     * they were opened, as by a gc or repack in another process, so
+     * that a lookup that missed can try the new ones.
+     * @return true if they were forgotten. */
+    private synchronized boolean refresh() {
+        if (_packs == null || _dir.lastModified() == _stamp) {
+            return false;
+        }
+        _packs = null;
+        return true;
+    }
+
+    /** returns true if the object SHA1 is in some pack. */
+    boolean contains(String sha1) {
+        do {
+            for (PackFile p : list()) {
+                if (p.contains(sha1)) {
+                    return true;
+                }
+            }
+        } while (refresh());
+        return false;
+    }
+
+    /** returns the object SHA1 as it would be stored loose, or null
+     * if no pack has it. */
+    byte[] read(String sha1) {
+        do {
+            for (PackFile p : list()) {
+                byte[] r = p.read(sha1);
+                if (r != null) {
+                    return r;
+                }
+            }
+        } while (refresh());
+        return null;
+    }
+
+    /** opens a stream over the object SHA1 as it would be stored
+     * loose, or returns null if no pack has it. */
+    InputStream open(String sha1) {
+        do {
+            for (PackFile p : list()) {
+                InputStream r = p.open(sha1);
+                if (r != null) {
+                    return r;
+                }
+            }
+        } while (refresh());
+        return null;
+    }
+
+    /** the directory holding the packs. */
+    private File _dir;
+    /** the open packs, or null before they are first needed. */
+    private List<PackFile> _packs;
+    /** modification time of the directory when the packs were
+     * opened. */
+    private long _stamp;
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** The branches of a repository. Each branch is a file refs/heads/NAME
+ *  holding the sha1 of its head commit and a newline, and the file HEAD
+ *  holds "ref: " and the name of the branch checked out. Making a
+ *  branch or a commit changes only one of these small files. Changes
+ *  go through the Journal, so they take effect together when the
+ *  command is done, each file being replaced whole.
+ *  @author Brandon Byrne
+ */
+class Refs {
+    /** start of the contents of HEAD, before the branch name. */
+    static final String PREFIX = "ref: ";
+    /** directory of the branch files, relative to .gitlet. */
+    static final String HEADS = "refs/heads";
+    /** file naming the branch checked out, relative to .gitlet. */
+    static final String HEAD = "HEAD";
+
+    /** the branches of a repository, changed through JOURNAL. */
+    Refs(Journal journal) {
+        _journal = journal;
+    }
+
+    /** returns true if the branches are stored as refs, rather than
+     * in the branch folders of older repositories. */
+    boolean exists() {
+        return _journal.read(HEAD) != null;
+    }
+
+    /** returns true if NAME may name a branch: it is not empty, does
+     * not start with "." and holds no "/", backslash or "..", so that its
+     * ref is a file directly in refs/heads. */
+    static boolean isValid(String name) {
+        return !name.isEmpty() && !name.startsWith(".")
+                && !name.contains("/") && !name.contains("\\")
+                && !name.contains("..");
+    }
+
+    /** returns the sha1 of the head of the branch NAME, or null if
+     * there is no such branch. */
+    String get(String name) {
+        if (!isValid(name)) {
+            return null;
+        }
+        return read(HEADS + "/" + name);
+    }
+
+    /** makes SHA1 the head of the branch NAME, creating it if need be. */
+    void set(String name, String sha1) {
+        if (!isValid(name)) {
+            throw Utils.error("Not a valid branch name.");
+        }
+        write(HEADS + "/" + name, sha1);
+    }
+
+    /** removes the branch NAME.
+     * @return true if there was such a branch. */
+    boolean delete(String name) {
+        if (get(name) == null) {
+            return false;
+        }
+        _journal.delete(HEADS + "/" + name);
+        return true;
+    }
+
+    /** returns the names of the branches, in sorted order. */
+    List<String> names() {
+        return _journal.list(HEADS);
+    }
+
+    /** returns the name of the branch checked out. */
+    String head() {
+        String ref = read(HEAD);
+        if (ref == null || !ref.startsWith(PREFIX)) {
+            throw Utils.error("Corrupt HEAD.");
+        }
+        return ref.substring(PREFIX.length());
+    }
+
+    /** checks out the branch NAME. */
+    void setHead(String name) {
+        write(HEAD, PREFIX + name);
+    }
+
+    /** returns the line held by the file PATH, or null if there is no
+     * such file. */
+    private String read(String path) {
+        byte[] contents = _journal.read(path);
+        if (contents == null) {
+            return null;
+        }
+        return new String(contents, StandardCharsets.UTF_8).trim();
+    }
+
+    /** makes the file PATH hold the line LINE. */
+    private void write(String path, String line) {
+        _journal.write(path, (line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** journal the refs are read and changed through. */
+    private final Journal _journal;
+}
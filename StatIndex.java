@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Remembers the blob hash of files in the working directory and the
+ *  staging area together with their size, modification time and
+ *  inode when they were hashed, so that a file whose stat data has
+ *  not changed since need not be read again. The index is kept in
+ *  .gitlet/index and rewritten whole when it changes.
+ *
+ *  A file modified within RACY of being hashed could be changed again
+ *  without its stat data changing, so such entries are not trusted
+ *  and the file is hashed again the next time it is asked about.
+ *
+ *  hash and cached may be called from several threads at once; save
+ *  may not run alongside them.
+ *  @author Brandon Byrne
+ */
+class StatIndex {
+    /** nanoseconds within which a change may not show in the mtime. */
+    static final long RACY = TimeUnit.SECONDS.toNanos(2);
+
+    /** the index stored in FILE for files under ROOT, empty if FILE
+     * does not exist or cannot be read. */
+    StatIndex(File file, File root) {
+        _file = file;
+        _root = root.getAbsolutePath() + File.separator;
+        _entries = new ConcurrentHashMap<>();
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                Entry e = new Entry(in.readUTF(), in.readLong(),
+                        in.readLong(), in.readUTF(), in.readLong(),
+                        in.readUTF());
+                _entries.put(path, e);
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** returns the blob hash of F as the file NAME, reading F only if
+     * its stat data has changed since it was last hashed. */
+    String hash(File f, String name) {
+        String cached = cached(f, name);
+        if (cached != null) {
+            return cached;
+        }
+        long checked = System.currentTimeMillis();
+        BasicFileAttributes a = stat(f);
+        String hash = Blob.hash(f, name);
+        if (a != null) {
+            _entries.put(key(f), new Entry(name, a.size(), mtime(a),
+                    String.valueOf(a.fileKey()),
+                    TimeUnit.MILLISECONDS.toNanos(checked), hash));
+            _dirty = true;
+        }
+        return hash;
+    }
+
+    /** returns the blob hash of F as the file NAME if the index has a
+     * trusted one for it, or null. Never reads F. */
+    String cached(File f, String name) {
+        Entry e = _entries.get(key(f));
+        if (e == null || !e._name.equals(name)) {
+            return null;
+        }
+        BasicFileAttributes a = stat(f);
+        if (a == null || a.size() != e._size || mtime(a) != e._mtime
+                || !String.valueOf(a.fileKey()).equals(e._inode)
+                || e._mtime >= e._checked - RACY) {
+            return null;
+        }
+        return e._hash;
+    }
+
+    /** writes the index out if it has changed, dropping entries for
+     * files that no longer exist. */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        Iterator<String> paths = _entries.keySet().iterator();
+        while (paths.hasNext()) {
+            if (!new File(_root + paths.next()).exists()) {
+                paths.remove();
+            }
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> p : _entries.entrySet()) {
+                Entry e = p.getValue();
+                out.writeUTF(p.getKey());
+                out.writeUTF(e._name);
+                out.writeLong(e._size);
+                out.writeLong(e._mtime);
+                out.writeUTF(e._inode);
+                out.writeLong(e._checked);
+                out.writeUTF(e._hash);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** returns the path of F relative to the root. */
+    private String key(File f) {
+        String p = f.getAbsolutePath();
+        return p.startsWith(_root) ? p.substring(_root.length()) : p;
+    }
+
+    /** returns the attributes of F, or null if it does not exist. */
+    private static BasicFileAttributes stat(File f) {
+        try {
+            return Files.readAttributes(f.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** returns the modification time in A in nanoseconds. */
+    private static long mtime(BasicFileAttributes a) {
+        return a.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /** What the index knows about one file. */
+    private static class Entry {
+        /** the file NAME of SIZE bytes, modified at MTIME, with inode
+         * INODE, hashed at CHECKED to HASH. */
+        Entry(String name, long size, long mtime, String inode,
+              long checked, String hash) {
+            _name = name;
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _checked = checked;
+            _hash = hash;
+        }
+
+        /** name the file was hashed as. */
+        private final String _name;
+        /** size of the file in bytes. */
+        private final long _size;
+        /** modification time of the file in nanoseconds. */
+        private final long _mtime;
+        /** the file's inode, as its file key. */
+        private final String _inode;
+        /** time the file was hashed in nanoseconds. */
+        private final long _checked;
+        /** blob hash of the file. */
+        private final String _hash;
+    }
+
+    /** file the index is kept in. */
+    private final File _file;
+    /** absolute path of the directory keys are relative to, with a
+     * trailing separator. */
+    private final String _root;
+    /** entries by path relative to _root. */
+    private final ConcurrentHashMap<String, Entry> _entries;
+    /** true if _entries differ from the file. */
+    private volatile boolean _dirty;
+}
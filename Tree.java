@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Trees: the snapshot of one directory. A tree maps the name of
+ *  each file in the directory to its blob's sha1 and the name of each
+ *  subdirectory, followed by a "/", to the sha1 of its own tree. A
+ *  tree's sha1 is the sha1 of its encoding, so directories whose
+ *  contents are the same share one tree object across every commit
+ *  they appear in, and changing one file only creates new trees for
+ *  the directories on its path.
+ *
+ *  Paths handed to and returned by these methods are relative to the
+ *  root tree, with "/" between their parts.
+ *  @author Brandon Byrne
+ */
+class Tree {
+    /** separator between the parts of a path. */
+    static final String SEPARATOR = "/";
+
+    /** returns the entries of the tree SHA1 in STORE, or an empty
+     * map if SHA1 is null. */
+    static TreeMap<String, String> read(ObjectStore store, String sha1) {
+        if (sha1 == null) {
+            return new TreeMap<>();
+        }
+        byte[] data = store.get(sha1);
+        if (data == null) {
+            throw Utils.error("Missing tree %s.", sha1);
+        }
+        return ObjectCodec.decodeTree(Compression.decompress(data));
+    }
+
+    /** stores a tree with ENTRIES in STORE, compressed with Z, unless
+     * it is there already.
+     * @return its sha1. */
+    static String write(ObjectStore store, Map<String, String> entries,
+                        Compression z) {
+        byte[] data = ObjectCodec.encodeTree(entries);
+        String sha1 = Utils.sha1(data);
+        if (!store.contains(sha1)) {
+            store.put(sha1, z.compress(data));
+        }
+        return sha1;
+    }
+
+    /** returns the sha1 of the tree made from the tree ROOT, which may
+     * be null for an empty one, by setting each path in CHANGES to its
+     * blob sha1, or removing it if that is null. Only the trees on the
+     * paths of CHANGES are read and written; new ones go into STORE
+     * compressed with Z. */
+    static String edit(ObjectStore store, String root,
+                       Map<String, String> changes, Compression z) {
+        String sha1 = apply(store, root, changes, z);
+        return sha1 == null ? write(store, new TreeMap<>(), z) : sha1;
+    }
+
+    /** does the work of edit for STORE, ROOT, CHANGES and Z.
+     * @return the new tree's sha1, or null if it is empty. */
+    private static String apply(ObjectStore store, String root,
+                                Map<String, String> changes, Compression z) {
+        TreeMap<String, String> entries = read(store, root);
+        TreeMap<String, Map<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int k = path.indexOf(SEPARATOR);
+            if (k < 0) {
+                if (e.getValue() == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, e.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, k + 1),
+                    d -> new TreeMap<>()).put(path.substring(k + 1),
+                            e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : below.entrySet()) {
+            String dir = e.getKey();
+            String sub = apply(store, entries.get(dir), e.getValue(), z);
+            if (sub == null) {
+                entries.remove(dir);
+            } else {
+                entries.put(dir, sub);
+            }
+        }
+        return entries.isEmpty() ? null : write(store, entries, z);
+    }
+
+    /** adds every file under the tree SHA1 in STORE to FILES, mapping
+     * its path, starting with PREFIX, to its blob sha1. */
+    static void flatten(ObjectStore store, String sha1, String prefix,
+                        Map<String, String> files) {
+        for (Map.Entry<String, String> e : read(store, sha1).entrySet()) {
+            if (e.getKey().endsWith(SEPARATOR)) {
+                flatten(store, e.getValue(), prefix + e.getKey(), files);
+            } else {
+                files.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** adds to CHANGES every file whose blob differs between the trees
+     * FROM and TO in STORE, either of which may be null for an empty
+     * tree, mapping its path, starting with PREFIX, to its blob sha1
+     * in TO, or to null if TO does not have it. If BEFORE is not null
+     * the path is also mapped there to its blob sha1 in FROM, or to
+     * null. Subtrees that are the same in both are skipped without
+     * being read, so the work done is proportional to the
+     * difference. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String> changes,
+                     Map<String, String> before) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        TreeMap<String, String> a = read(store, from);
+        TreeMap<String, String> b = read(store, to);
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String x = a.get(name), y = b.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            if (name.endsWith(SEPARATOR)) {
+                diff(store, x, y, prefix + name, changes, before);
+            } else {
+                changes.put(prefix + name, y);
+                if (before != null) {
+                    before.put(prefix + name, x);
+                }
+            }
+        }
+    }
+
+    /** adds the sha1 of the tree SHA1 in STORE, and of every tree and
+     * blob below it, to OBJECTS. A tree already there is not read
+     * again, so a tree shared by many commits is walked once. */
+    static void collect(ObjectStore store, String sha1,
+                        Set<String> objects) {
+        if (sha1 == null || !objects.add(sha1)) {
+            return;
+        }
+        for (Map.Entry<String, String> e : read(store, sha1).entrySet()) {
+            if (e.getKey().endsWith(SEPARATOR)) {
+                collect(store, e.getValue(), objects);
+            } else {
+                objects.add(e.getValue());
+            }
+        }
+    }
+}
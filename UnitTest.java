@@ -4,6 +4,22 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +36,832 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Every codec gives back exactly what it compressed, for both
+     *  repetitive and incompressible data larger than one block. */
+    @Test
+    public void compressionRoundTripTest() {
+        java.util.Random r = new java.util.Random(61);
+        byte[] data = new byte[3 * Lz4.BLOCK_SIZE + 17];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i < data.length / 2 ? i % 37 : r.nextInt());
+        }
+        data[0] = ObjectCodec.MAGIC0;
+        for (Compression z : Compression.values()) {
+            assertArrayEquals(data, Compression.decompress(z.compress(data)));
+        }
+    }
+
+    /** A delta rebuilds its target from its base exactly, and is much
+     *  smaller than the target when the two are mostly the same. */
+    @Test
+    public void deltaRoundTripTest() throws java.io.IOException {
+        java.util.Random r = new java.util.Random(7);
+        byte[] base = new byte[100000];
+        r.nextBytes(base);
+        byte[] target = java.util.Arrays.copyOf(base, base.length + 50);
+        target[500] += 1;
+        System.arraycopy(base, 0, target, 60000, 1000);
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 1000);
+    }
+
+    /** The object cache keeps the most recently used entries within
+     *  its capacity and counts hits, misses and evictions. */
+    @Test
+    public void objectCacheEvictionTest() {
+        ObjectCache c = new ObjectCache(3 * (ObjectCache.OVERHEAD + 10));
+        c.put("a", "A", 10);
+        c.put("b", "B", 10);
+        c.put("c", "C", 10);
+        assertEquals("A", c.get("a", String.class));
+        c.put("d", "D", 10);
+        assertNull(c.get("b", String.class));
+        assertEquals("A", c.get("a", String.class));
+        assertNull(c.get("a", Integer.class));
+        assertEquals(2, c.hits());
+        assertEquals(2, c.misses());
+        assertEquals(1, c.evictions());
+    }
+
+    /** An entry that grows past the capacity pushes the least recently
+     *  used entries out, and one no longer cached is not grown. */
+    @Test
+    public void objectCacheGrowTest() {
+        ObjectCache c = new ObjectCache(3 * (ObjectCache.OVERHEAD + 10));
+        c.put("a", "A", 10);
+        c.put("b", "B", 10);
+        c.put("c", "C", 10);
+        c.grow("a", "A", 100);
+        assertEquals(2, c.evictions());
+        assertEquals("A", c.get("a", String.class));
+        assertNull(c.get("b", String.class));
+        c.grow("b", "B", 1000);
+        assertEquals("A", c.get("a", String.class));
+    }
+
+    /** A cached commit is charged for its files once it reads them. */
+    @Test
+    public void commitWeightTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 3);
+        String id = g.head().sha1();
+        g.objectCache().clear();
+        Commit c = g.getCommit(id);
+        long before = c.weight();
+        String counters = g.objectCache().toString();
+        assertEquals(3, c.fileToSha().size());
+        assertEquals(before + 3 * Commit.FILE_WEIGHT + 2 * 6, c.weight());
+        assertNotEquals(counters, g.objectCache().toString());
+    }
+
+    /** Removing the last loose object, kept at its legacy path, leaves
+     *  the directory of the store in place. */
+    @Test
+    public void removeLegacyLooseTest() {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(dir,
+                new Packs(new File(dir, "packs")));
+        String id = "ab" + "0".repeat(Utils.UID_LENGTH - 2);
+        Utils.writeContents(store.legacyPath(id), "legacy");
+        store.removeLoose(id);
+        assertFalse(store.legacyPath(id).exists());
+        assertTrue(dir.isDirectory());
+        store.put(id, new byte[] {1});
+        store.removeLoose(id);
+        assertFalse(store.path(id).getParentFile().exists());
+        assertTrue(dir.isDirectory());
+    }
+
+    /** Repacking, even into a pack of the same name, leaves only the
+     *  pack and its index behind, and every object is read from it. */
+    @Test
+    public void repackTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 3);
+        String id = g.head().sha1();
+        g.repack();
+        g.repack();
+        String[] files = g.packs().dir().list();
+        java.util.Arrays.sort(files);
+        assertEquals(2, files.length);
+        assertTrue(files[0].endsWith(".idx"));
+        assertTrue(files[1].endsWith(".pack"));
+        g.objectCache().clear();
+        Commit c = g.getCommit(id);
+        assertEquals("file 2\n", g.getBlobInBlobs(
+                c.fileToSha().get("f2")).contents());
+    }
+
+    /** A migrated commit is stored under its new id alone, so a "/" in
+     *  its message does not matter. */
+    @Test
+    public void migrateCommitNameTest() throws IOException {
+        GitletControlSystem g = repository();
+        File dir = tempDir();
+        Commit c = new Commit("fix a/b", null, null, "master", 0,
+                java.util.Map.of("f", "0".repeat(Utils.UID_LENGTH)),
+                "1".repeat(Utils.UID_LENGTH));
+        Utils.writeContents(new File(dir, "legacy"), Utils.serialize(c));
+        ArrayList<File> stale = new ArrayList<>();
+        String id = Migrate.migrateCommits(dir, g.compression(), stale)
+                .get(c.sha1());
+        assertEquals(List.of(new File(dir, "legacy")), stale);
+        Commit m = ObjectCodec.readCommit(new File(dir, id));
+        assertEquals("fix a/b", m.msg());
+        assertEquals(id, m.sha1());
+    }
+
+    /** Migrating a repository whose legacy history has tree commits
+     *  on top rewrites both, keeps every branch readable and leaves no
+     *  old commit behind. */
+    @Test
+    public void migrateMixedTest() throws IOException {
+        GitletControlSystem g = repository();
+        String init = g.active();
+        write(g, "a.txt", "legacy\n");
+        String blob = ObjectCodec.writeBlob(g.blobStore(),
+                Utils.join(g.cwd(), "a.txt"), "a.txt", g.compression())
+                .sha1();
+        Commit legacy = new Commit("legacy", init, null, "master", 1000,
+                java.util.Map.of("a.txt", blob), Utils.sha1("legacy"));
+        String name = "legacy" + legacy.sha1();
+        Utils.writeContents(Utils.join(g.commits(), name),
+                Utils.serialize(legacy));
+        g.commitIndex().add(legacy.sha1(), name);
+        g.refs().set("master", legacy.sha1());
+        g.checkpoint();
+        g.branch("dev");
+        write(g, "b.txt", "tree\n");
+        g.add("b.txt");
+        g.commit("tree", null);
+        g.checkpoint();
+        Migrate.main();
+        GitletControlSystem h = Main.load();
+        assertFalse(Utils.join(h.commits(), name).exists());
+        assertFalse(h.commitIndex().contains(legacy.sha1()));
+        Commit dev = h.getCommit(h.refs().get("dev"));
+        assertEquals("legacy", dev.msg());
+        assertEquals(init, dev.parent());
+        Commit master = h.getCommit(h.refs().get("master"));
+        assertEquals("tree", master.msg());
+        assertEquals(dev.sha1(), master.parent());
+        assertEquals(blob, master.fileToSha().get("a.txt"));
+        assertTrue(h.fsck().endsWith("No problems found."));
+        h.checkoutBranch("dev");
+        assertFalse(Utils.join(h.cwd(), "b.txt").exists());
+        assertEquals("legacy\n", Utils.readContentsAsString(
+                Utils.join(h.cwd(), "a.txt")));
+    }
+
+    /** Migrating a repository already in the current format, as many
+     *  times as it is run, changes nothing. */
+    @Test
+    public void migrateTwiceTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 2);
+        g.branch("dev");
+        g.checkpoint();
+        List<String> before = repositoryState(g);
+        Migrate.main();
+        assertEquals(before, repositoryState(Main.load()));
+        Migrate.main();
+        GitletControlSystem h = Main.load();
+        assertEquals(before, repositoryState(h));
+        assertEquals(3, h.commitIndex().ids().size());
+    }
+
+    /** A commit message too long for a modified UTF-8 string is
+     *  indexed, found, and read back when the index is loaded again. */
+    @Test
+    public void longMessageTest() throws IOException {
+        GitletControlSystem g = repository();
+        String msg = "x".repeat(72 * 1024) + " long";
+        write(g, "a.txt", "a\n");
+        g.add("a.txt");
+        g.commit(msg, null);
+        write(g, "b.txt", "b\n");
+        g.add("b.txt");
+        g.commit("after", null);
+        MessageIndex index = MessageIndex.load(
+                Utils.join(g.path(), "messageIndex"), g.commitIndex(),
+                g::getCommit);
+        assertEquals(1, index.find(msg, MessageIndex.Match.EXACT).size());
+        assertEquals(1, index.find("after", MessageIndex.Match.EXACT).size());
+    }
+
+    /** A message index whose last record was cut short is rebuilt
+     *  rather than appended to after the partial record. */
+    @Test
+    public void tornMessageIndexTest() throws IOException {
+        GitletControlSystem g = repository();
+        write(g, "a.txt", "a\n");
+        g.add("a.txt");
+        g.commit("first", null);
+        File f = Utils.join(g.path(), "messageIndex");
+        byte[] data = Utils.readContents(f);
+        Utils.writeContents(f, java.util.Arrays.copyOf(data,
+                data.length - 3));
+        MessageIndex index = MessageIndex.load(f, g.commitIndex(),
+                g::getCommit);
+        index.add("0123456789012345678901234567890123456789", "later");
+        index = MessageIndex.load(f, g.commitIndex(), g::getCommit);
+        assertEquals(1, index.find("first", MessageIndex.Match.EXACT).size());
+        assertEquals(1, index.find("later", MessageIndex.Match.EXACT).size());
+    }
+
+    /** A branch name that would put its ref outside refs/heads, or in
+     *  a directory below it, is refused and writes nothing. */
+    @Test
+    public void branchNameTest() throws IOException {
+        GitletControlSystem g = repository();
+        for (String name : new String[] {"../../../evil", "a/b", "a\\b",
+                                         "", ".hidden", "x..y"}) {
+            try {
+                g.branch(name);
+                fail("made branch " + name);
+            } catch (GitletException excp) {
+                assertEquals("Not a valid branch name.", excp.getMessage());
+            }
+        }
+        g.checkpoint();
+        assertFalse(Utils.join(g.cwd(), "evil").exists());
+        assertFalse(Utils.join(g.path(), "evil").exists());
+        assertFalse(Utils.join(g.path(), Refs.HEADS, "a").exists());
+        try {
+            g.rmBranch("../HEAD");
+            fail("removed ../HEAD");
+        } catch (GitletException excp) {
+            assertTrue(Utils.join(g.path(), Refs.HEAD).isFile());
+        }
+        g.branch("feature-1");
+        g.checkpoint();
+        assertEquals(java.util.List.of("feature-1", "master"),
+                g.refs().names());
+    }
+
+    /** Recovery replays every whole transaction left in the journal
+     *  by a crash, in order, ignores one cut short, and empties it. */
+    @Test
+    public void journalReplayTest() throws IOException {
+        File dir = Files.createTempDirectory(TEMP.toPath(), "j").toFile();
+        Utils.writeContents(Utils.join(dir, "gone"), "x");
+        java.io.ByteArrayOutputStream log =
+            new java.io.ByteArrayOutputStream();
+        log.write(transaction("refs/heads/a", "1\n", "gone"));
+        log.write(transaction("refs/heads/a", "2\n", null));
+        byte[] torn = transaction("refs/heads/b", "3\n", null);
+        log.write(torn, 0, torn.length - 1);
+        Utils.writeContents(Utils.join(dir, Journal.FILE),
+                log.toByteArray());
+        Journal.recover(dir);
+        assertEquals("2\n", Utils.readContentsAsString(
+                Utils.join(dir, "refs", "heads", "a")));
+        assertFalse(Utils.join(dir, "gone").exists());
+        assertFalse(Utils.join(dir, "refs", "heads", "b").exists());
+        assertFalse(Utils.join(dir, Journal.FILE).exists());
+    }
+
+    /** A commit is durable by itself: loading the repository again
+     *  without saving finds the branch moved, the stage empty and no
+     *  journal left over. */
+    @Test
+    public void commitDurableTest() throws IOException {
+        GitletControlSystem g = repository();
+        write(g, "a.txt", "a\n");
+        g.add("a.txt");
+        g.commit("one", null);
+        String head = g.active();
+        GitletControlSystem h = Main.load();
+        assertEquals(head, h.active());
+        assertTrue(Utils.plainFilenamesUnder(h.stage()).isEmpty());
+        assertFalse(Utils.join(h.path(), Journal.FILE).exists());
+        assertEquals("one", h.head().msg());
+    }
+
+    /** A commit index whose last record was cut short inside its
+     *  sha1 is rebuilt, so records added later are read back whole. */
+    @Test
+    public void tornCommitIndexTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 3);
+        File f = Utils.join(g.path(), "commitIndex");
+        byte[] data = Utils.readContents(f);
+        Utils.writeContents(f, java.util.Arrays.copyOf(data,
+                data.length - 70));
+        CommitIndex index = CommitIndex.load(f, g.commits(), g.packs());
+        assertEquals(4, index.ids().size());
+        index.add("0123456789012345678901234567890123456789", "x");
+        index = CommitIndex.load(f, g.commits(), g.packs());
+        assertEquals(5, index.ids().size());
+        assertTrue(index.ids().containsAll(g.commitIndex().ids()));
+        assertEquals("x", index.location(
+                "0123456789012345678901234567890123456789"));
+    }
+
+    /** A commit graph whose last record was cut short is cut back to
+     *  its whole records, and the commit of the partial one is added
+     *  again in line with them. */
+    @Test
+    public void tornCommitGraphTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 3);
+        File f = Utils.join(g.path(), "commitGraph");
+        g.commitGraph();
+        byte[] data = Utils.readContents(f);
+        Utils.writeContents(f, java.util.Arrays.copyOf(data,
+                data.length - 10));
+        CommitGraph graph = CommitGraph.load(f, g.commitIndex(),
+                g::getCommit);
+        assertEquals(4, graph.size());
+        assertEquals(0, f.length() % CommitGraph.RECORD);
+        graph = CommitGraph.load(f, g.commitIndex(), g::getCommit);
+        assertEquals(4, graph.size());
+        assertEquals(4, graph.generation(g.active()));
+    }
+
+    /** A batch whose input fails part way still writes the state
+     *  the commands before the failure left. */
+    @Test
+    public void batchCheckpointTest() throws IOException {
+        GitletControlSystem g = repository();
+        java.io.BufferedReader in = new java.io.BufferedReader(
+                new java.io.StringReader("branch b\n")) {
+            /** lines read so far. */
+            private int _lines;
+
+            @Override
+            public String readLine() throws IOException {
+                _lines += 1;
+                if (_lines > 1) {
+                    throw new IOException("input lost");
+                }
+                return super.readLine();
+            }
+        };
+        try {
+            new Batch(g).run(in);
+            fail("batch read past the failure");
+        } catch (IOException excp) {
+            assertEquals("input lost", excp.getMessage());
+        }
+        assertNotNull(Main.load().refs().get("b"));
+    }
+
+    /** A command that fails part way through a batch leaves the state
+     *  as the line before it did, and the batch goes on from there. */
+    @Test
+    public void batchFailedLineTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 1);
+        g.branch("x");
+        g.checkoutBranch("x");
+        write(g, "x.txt", "on x\n");
+        g.add("x.txt");
+        g.commit("on x", null);
+        g.checkoutBranch("master");
+        write(g, "m.txt", "on master\n");
+        g.add("m.txt");
+        g.commit("on master", null);
+        String head = g.active();
+        List<String> tracked = new ArrayList<>(g.tracked());
+        File messages = Utils.join(g.path(), "messageIndex");
+        messages.delete();
+        messages.mkdir();
+        new Batch(g).run(new java.io.BufferedReader(
+                new java.io.StringReader("branch b\nmerge x\nbranch c\n")));
+        messages.delete();
+        GitletControlSystem h = Main.load();
+        assertEquals(head, h.refs().get("master"));
+        assertNotNull(h.refs().get("b"));
+        assertNotNull(h.refs().get("c"));
+        assertEquals(tracked, h.tracked());
+    }
+
+    /** A daemon replaces a socket left behind by one that is gone, and
+     *  a second daemon refuses to take the socket of one that is
+     *  running, which goes on serving. */
+    @Test
+    public void daemonSocketTest() throws Exception {
+        GitletControlSystem g = repository();
+        File socket = Utils.join(g.path(), Daemon.SOCKET);
+        ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(
+                UnixDomainSocketAddress.of(socket.toPath())).close();
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        assertFalse(Daemon.forward(g.path(), new String[] {"status"}, out));
+        Thread first = new Thread(() -> {
+            try {
+                new Daemon(g.path()).serve();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        first.start();
+        while (!Daemon.forward(g.path(), new String[] {"status"}, out)) {
+            Thread.sleep(10);
+        }
+        try {
+            new Daemon(g.path()).serve();
+            fail("second daemon started");
+        } catch (GitletException excp) {
+            assertEquals("A daemon is already running.", excp.getMessage());
+        }
+        assertTrue(Daemon.forward(g.path(), new String[] {"daemon", "stop"},
+                out));
+        first.join();
+        assertFalse(socket.exists());
+    }
+
+    /** reset moves the current branch, even to a commit made on a
+     *  branch since removed. */
+    @Test
+    public void resetTest() throws IOException {
+        GitletControlSystem g = repository();
+        g.branch("x");
+        g.checkoutBranch("x");
+        write(g, "a.txt", "on x\n");
+        g.add("a.txt");
+        g.commit("on x", null);
+        String id = g.active();
+        g.checkoutBranch("master");
+        g.rmBranch("x");
+        g.reset(id.substring(0, 8));
+        assertEquals("master", g.refs().head());
+        assertEquals(id, g.refs().get("master"));
+        assertEquals("on x\n", Utils.readContentsAsString(
+                Utils.join(g.cwd(), "a.txt")));
+    }
+
+    /** The edits either algorithm finds turn the first version into
+     *  the second, and Myers' edits are as few as possible. */
+    @Test
+    public void diffRoundTripTest() {
+        Random random = new Random(0);
+        for (int t = 0; t < 500; t += 1) {
+            List<String> a = randomLines(random);
+            List<String> b = randomLines(random);
+            for (Diff.Algorithm how : Diff.Algorithm.values()) {
+                List<Diff.Edit> edits = Diff.diff(a, b, how);
+                assertEquals(b, patch(a, b, edits));
+                if (how == Diff.Algorithm.MYERS) {
+                    int changed = 0;
+                    for (Diff.Edit e : edits) {
+                        changed += e.aEnd() - e.aBegin()
+                                + e.bEnd() - e.bBegin();
+                    }
+                    assertEquals(a.size() + b.size()
+                            - 2 * common(a, b), changed);
+                }
+            }
+        }
+    }
+
+    /** A three-way merge takes a change made on one side only, or
+     *  alike on both, and puts only the lines that differ between
+     *  conflict markers. */
+    @Test
+    public void merge3Test() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("a\nB\nc\nD\ne\n",
+                merge3(base, "a\nB\nc\nd\ne\n", "a\nb\nc\nD\ne\n", 0));
+        assertEquals("a\nB\nc\nd\ne\n",
+                merge3(base, "a\nB\nc\nd\ne\n", "a\nB\nc\nd\ne\n", 0));
+        assertEquals("a\n" + Merge3.OURS + "X\n" + Merge3.SEPARATOR
+                + "Y\n" + Merge3.THEIRS + "c\nd\ne\n",
+                merge3(base, "a\nX\nc\nd\ne\n", "a\nY\nc\nd\ne\n", 1));
+        Random random = new Random(0);
+        for (int t = 0; t < 200; t += 1) {
+            String o = String.join("", randomLines(random));
+            String a = String.join("", randomLines(random));
+            assertEquals(a, merge3(o, a, o, 0));
+            assertEquals(a, merge3(o, o, a, 0));
+            assertEquals(a, merge3(o, a, a, 0));
+        }
+    }
+
+    /** The merge base of two branches is the commit they split at, and
+     *  after a merge it is the head that was merged in. */
+    @Test
+    public void mergeBaseTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 2);
+        String split = g.active();
+        g.branch("x");
+        write(g, "m.txt", "on master\n");
+        g.add("m.txt");
+        g.commit("on master", null);
+        String master = g.active();
+        g.checkoutBranch("x");
+        write(g, "x.txt", "on x\n");
+        g.add("x.txt");
+        g.commit("on x", null);
+        String x = g.active();
+        CommitGraph graph = g.commitGraph();
+        assertEquals(split, graph.mergeBase(master, x));
+        assertEquals(split, graph.mergeBase(x, master));
+        assertEquals(split, graph.mergeBase(split, x));
+        assertTrue(graph.isAncestor(split, x));
+        assertFalse(graph.isAncestor(master, x));
+        assertEquals(graph.generation(split) + 1, graph.generation(x));
+        g.checkoutBranch("master");
+        g.merge("x");
+        assertEquals(x, g.commitGraph().mergeBase(g.active(), x));
+        assertTrue(g.commitGraph().isAncestor(master, g.active()));
+    }
+
+    /** Editing a tree changes only the paths given, and the diff of
+     *  two trees names exactly the files whose blobs differ. */
+    @Test
+    public void treeDiffTest() throws IOException {
+        GitletControlSystem g = repository();
+        ObjectStore store = g.blobStore();
+        Compression z = g.compression();
+        TreeMap<String, String> files = new TreeMap<>();
+        files.put("a/b/c", id('1'));
+        files.put("a/d", id('2'));
+        files.put("e", id('3'));
+        String from = Tree.edit(store, null, files, z);
+        TreeMap<String, String> edits = new TreeMap<>();
+        edits.put("a/b/c", id('4'));
+        edits.put("e", null);
+        edits.put("f/g", id('5'));
+        String to = Tree.edit(store, from, edits, z);
+        TreeMap<String, String> flat = new TreeMap<>();
+        Tree.flatten(store, to, "", flat);
+        TreeMap<String, String> expected = new TreeMap<>();
+        expected.put("a/b/c", id('4'));
+        expected.put("a/d", id('2'));
+        expected.put("f/g", id('5'));
+        assertEquals(expected, flat);
+        TreeMap<String, String> changes = new TreeMap<>();
+        TreeMap<String, String> before = new TreeMap<>();
+        Tree.diff(store, from, to, "", changes, before);
+        assertEquals(edits, changes);
+        assertEquals(id('1'), before.get("a/b/c"));
+        assertEquals(id('3'), before.get("e"));
+        assertNull(before.get("f/g"));
+        assertEquals(3, before.size());
+        changes.clear();
+        Tree.diff(store, to, to, "", changes, null);
+        assertTrue(changes.isEmpty());
+        edits.clear();
+        edits.put("f/g", null);
+        edits.put("e", id('3'));
+        edits.put("a/b/c", id('1'));
+        assertEquals(from, Tree.edit(store, to, edits, z));
+    }
+
+    /** An abbreviated id names the one commit it starts, is refused
+     *  when it starts several, and is shown just long enough to be
+     *  unique. */
+    @Test
+    public void abbreviatedIdTest() {
+        File dir = tempDir();
+        CommitIndex index = CommitIndex.load(new File(dir, "commitIndex"),
+                dir, new Packs(new File(dir, "packs")));
+        String a = "abcdef1" + id('0').substring(7);
+        String b = "abcdef2" + id('0').substring(7);
+        String c = "12" + id('0').substring(2);
+        index.add(a, a);
+        index.add(b, b);
+        index.add(c, c);
+        assertEquals(a, index.resolve("abcdef1"));
+        assertEquals(b, index.resolve(b));
+        assertNull(index.resolve("abcdef3"));
+        try {
+            index.resolve("abcdef");
+            fail("ambiguous id resolved");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("Ambiguous commit id"));
+        }
+        assertEquals("abcdef1", index.abbreviate(a));
+        assertEquals(CommitIndex.MIN_ABBREV, index.abbreviate(c).length());
+    }
+
+    /** gc leaves an unreachable commit and its objects alone while they
+     *  are younger than the grace period, and removes them after. */
+    @Test
+    public void gcGraceTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 1);
+        g.branch("x");
+        g.checkoutBranch("x");
+        write(g, "x.txt", "only on x\n");
+        g.add("x.txt");
+        g.commit("on x", null);
+        String x = g.active();
+        String blob = g.head().fileToSha().get("x.txt");
+        g.checkoutBranch("master");
+        g.rmBranch("x");
+        assertEquals("Removed 0 commits and 0 objects.", g.gc());
+        assertTrue(g.commitIndex().contains(x));
+        assertTrue(g.blobStore().contains(blob));
+        long old = System.currentTimeMillis() - 2 * g.config().grace();
+        for (File dir : new File[] {g.commits(), g.blobStore().dir()}) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.forEach(p -> p.toFile().setLastModified(old));
+            }
+        }
+        assertTrue(g.gc().startsWith("Removed 1 commits and "));
+        assertFalse(g.commitIndex().contains(x));
+        assertFalse(g.blobStore().contains(blob));
+        assertEquals("file 0\n", g.getBlobInBlobs(
+                g.head().fileToSha().get("f0")).contents());
+    }
+
+    /** fsck finds nothing wrong with an intact repository, and reports
+     *  a loose object whose contents no longer match its id, and one
+     *  cut short. */
+    @Test
+    public void fsckTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 2);
+        assertTrue(g.fsck().endsWith("No problems found."));
+        String f0 = g.head().fileToSha().get("f0");
+        String f1 = g.head().fileToSha().get("f1");
+        File loose = g.blobStore().locate(f0);
+        byte[] data = Utils.readContents(loose);
+        Utils.writeContents(loose, Utils.readContents(
+                g.blobStore().locate(f1)));
+        String report = g.fsck();
+        assertTrue(report.contains("Corrupt object " + f0 + "."));
+        assertTrue(report.endsWith("Found 1 problems."));
+        Utils.writeContents(loose, java.util.Arrays.copyOf(data,
+                data.length / 2));
+        report = g.fsck();
+        assertTrue(report.contains("Unreadable object " + f0));
+        assertTrue(report.endsWith("Found 1 problems."));
+    }
+
+    /** A commit that fails before it is recorded leaves the staged
+     *  files and the branch as they were, so it can be made again. */
+    @Test
+    public void failedCommitTest() throws IOException {
+        GitletControlSystem g = repository();
+        commitFiles(g, 1);
+        String head = g.active();
+        write(g, "a.txt", "staged\n");
+        g.add("a.txt");
+        File commits = g.commits();
+        File aside = new File(commits.getPath() + ".aside");
+        assertTrue(commits.renameTo(aside));
+        Utils.writeContents(commits, "not a directory");
+        try {
+            g.commit("fails", null);
+            fail("commit written into a file");
+        } catch (RuntimeException excp) {
+            assertEquals(head, g.refs().get("master"));
+        }
+        commits.delete();
+        assertTrue(aside.renameTo(commits));
+        assertEquals(head, Main.load().active());
+        assertEquals(List.of("a.txt"),
+                Utils.plainFilenamesUnder(g.stage()));
+        g.commit("works", null);
+        assertEquals("works", g.head().msg());
+        assertTrue(Utils.plainFilenamesUnder(g.stage()).isEmpty());
+    }
+
+    /** makes N commits in G, each adding one file. */
+    private static void commitFiles(GitletControlSystem g, int n)
+            throws IOException {
+        for (int i = 0; i < n; i += 1) {
+            write(g, "f" + i, "file " + i + "\n");
+            g.add("f" + i);
+            g.commit("commit " + i, null);
+        }
+    }
+
+    /** returns a journal transaction writing CONTENTS to the file
+     *  PATH and, if DELETED is not null, deleting the file DELETED. */
+    private static byte[] transaction(String path, String contents,
+                                      String deleted) throws IOException {
+        java.io.ByteArrayOutputStream bytes =
+            new java.io.ByteArrayOutputStream();
+        java.io.DataOutputStream out = new java.io.DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeUTF(path);
+        out.writeInt(contents.length());
+        out.writeBytes(contents);
+        if (deleted != null) {
+            out.writeByte(2);
+            out.writeUTF(deleted);
+        }
+        byte[] changes = bytes.toByteArray();
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(changes);
+        return java.nio.ByteBuffer.allocate(changes.length + 12)
+            .putInt(changes.length).put(changes).putLong(crc.getValue())
+            .array();
+    }
+
+    /** returns a new repository in a fresh directory under TEMP, which
+     *  becomes the working directory. */
+    private static GitletControlSystem repository() throws IOException {
+        File dir = Files.createTempDirectory(TEMP.toPath(), "repo").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        return new GitletControlSystem();
+    }
+
+    /** makes the working file NAME of G hold CONTENTS. */
+    private static void write(GitletControlSystem g, String name,
+                              String contents) {
+        File f = Utils.join(g.cwd(), name);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, contents);
+    }
+
+    /** returns the merge of OURS and THEIRS, two versions of BASE, by
+     *  either algorithm, checking that it has CONFLICTS conflicts. */
+    private static String merge3(String base, String ours, String theirs,
+                                 int conflicts) throws IOException {
+        String merged = null;
+        for (Diff.Algorithm how : Diff.Algorithm.values()) {
+            StringWriter out = new StringWriter();
+            assertEquals(conflicts, Merge3.merge(out, base, ours, theirs,
+                    how));
+            if (merged != null) {
+                assertEquals(merged, out.toString());
+            }
+            merged = out.toString();
+        }
+        return merged;
+    }
+
+    /** returns the commit files, branch heads and commit index of G,
+     *  for comparing two states of a repository. */
+    private static List<String> repositoryState(GitletControlSystem g) {
+        ArrayList<String> state = new ArrayList<>(
+                Utils.plainFilenamesIn(g.commits()));
+        for (String name : g.refs().names()) {
+            state.add(name + " " + g.refs().get(name));
+        }
+        state.addAll(g.commitIndex().ids());
+        return state;
+    }
+
+    /** returns a made-up object id, C repeated. */
+    private static String id(char c) {
+        return String.valueOf(c).repeat(Utils.UID_LENGTH);
+    }
+
+    /** returns up to 20 lines drawn from a few, so that versions made
+     *  with RANDOM share many of them. */
+    private static List<String> randomLines(Random random) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (int n = random.nextInt(20); n > 0; n -= 1) {
+            lines.add((char) ('a' + random.nextInt(4)) + "\n");
+        }
+        return lines;
+    }
+
+    /** returns A with the regions EDITS replace, in order, replaced by
+     *  the lines of B they name. */
+    private static List<String> patch(List<String> a, List<String> b,
+                                      List<Diff.Edit> edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int k = 0;
+        for (Diff.Edit e : edits) {
+            assertTrue(e.aBegin() >= k);
+            result.addAll(a.subList(k, e.aBegin()));
+            result.addAll(b.subList(e.bBegin(), e.bEnd()));
+            k = e.aEnd();
+        }
+        result.addAll(a.subList(k, a.size()));
+        return result;
+    }
+
+    /** returns the length of the longest common subsequence of A and
+     *  B. */
+    private static int common(List<String> a, List<String> b) {
+        int[][] n = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i -= 1) {
+            for (int j = b.size() - 1; j >= 0; j -= 1) {
+                n[i][j] = a.get(i).equals(b.get(j)) ? n[i + 1][j + 1] + 1
+                        : Math.max(n[i + 1][j], n[i][j + 1]);
+            }
+        }
+        return n[0][0];
+    }
+
+    /** returns a new temporary directory, deleted with everything in it
+     *  when the tests are done. */
+    private static File tempDir() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-test").toFile();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                GitletControlSystem.clear(dir);
+                dir.delete();
+            }));
+            return dir;
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** directory the repositories made by tests are kept in. */
+    private static final File TEMP = tempDir();
+
 }
 
 
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -10,11 +11,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
@@ -53,6 +57,16 @@ class Utils {
         }
     }
 
+    /** Returns a new MessageDigest computing SHA-1, for hashing data
+     *  too large to pass to sha1 in one piece. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -132,6 +146,30 @@ class Utils {
         }
     }
 
+    /** Like writeContents, but writes CONTENTS to a temporary file
+     *  next to FILE and then renames it over FILE, so that readers,
+     *  and other threads or processes writing the same FILE, only
+     *  ever see a complete file.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static void writeContentsAtomically(File file, Object... contents) {
+        File tmp;
+        try {
+            tmp = File.createTempFile("tmp", null,
+                    file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            writeContents(tmp, contents);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -148,9 +186,9 @@ class Utils {
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Write OBJ to FILE, replacing it atomically. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        writeContentsAtomically(file, serialize(obj));
     }
 
     /* DIRECTORIES */
@@ -184,6 +222,34 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the paths, relative to DIR and with "/" between their
+     *  parts, of all plain files in DIR and the directories below it,
+     *  in lexicographic order. Directories named .gitlet are skipped.
+     *  Returns an empty list if DIR does not denote a directory. */
+    static List<String> plainFilenamesUnder(File dir) {
+        ArrayList<String> files = new ArrayList<>();
+        addFilenamesUnder(dir, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Adds the paths of the plain files under DIR to FILES, each
+     *  starting with PREFIX. */
+    private static void addFilenamesUnder(File dir, String prefix,
+                                          List<String> files) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File f : entries) {
+            if (f.isFile()) {
+                files.add(prefix + f.getName());
+            } else if (f.isDirectory() && !f.getName().equals(".gitlet")) {
+                addFilenamesUnder(f, prefix + f.getName() + "/", files);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -216,6 +282,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from DATA, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(data));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Runs independent pieces of work, such as hashing or storing one
+ *  file each, on a bounded pool of threads. Results come back in the
+ *  order of the work, so what a command prints and the ids it makes
+ *  do not depend on how the work was scheduled.
+ *  @author Brandon Byrne
+ */
+class Workers {
+    /** fewest pieces of work worth starting threads for. */
+    static final int MIN_PARALLEL = 8;
+
+    /** One piece of work done for an item. */
+    interface Task<T, R> {
+        /** returns the result of the work for ITEM. */
+        R apply(T item) throws IOException;
+    }
+
+    /** returns the results of TASK for each of ITEMS, in order, using
+     * at most THREADS threads. If any task fails, the rest are
+     * cancelled and the first failure, in the order of ITEMS, is
+     * thrown. */
+    static <T, R> List<R> map(List<T> items, int threads, Task<T, R> task)
+            throws IOException {
+        ArrayList<R> results = new ArrayList<>(items.size());
+        threads = Math.min(threads, items.size());
+        if (threads <= 1 || items.size() < MIN_PARALLEL) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gitlet-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            ArrayList<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.apply(item)));
+            }
+            for (Future<R> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the commands gitlet is used for most, run with
+ *  'make bench'. Each benchmark gets a fresh synthetic repository of
+ *  FILES working files of about SIZE bytes each, with DEPTH commits of
+ *  history, and a branch "other" that changes a DENSITY fraction of
+ *  the files master also changes, each side on its own lines, so that
+ *  merging it exercises line merges. Throughput and sampled latency
+ *  are reported, and 'make bench' adds allocation rates from the GC
+ *  profiler.
+ *
+ *  The repository lives in a temporary directory made the working
+ *  directory of the forked JVM, and commands that change it save the
+ *  state afterwards, as Main does.
+ *  @author Brandon Byrne
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitletBenchmark {
+    /** length of each line of a synthetic file, newline included. */
+    static final int LINE = 64;
+
+    /** number of working files. */
+    @Param({"100", "1000"})
+    public int files;
+    /** approximate size of each working file in bytes. */
+    @Param({"4096"})
+    public int size;
+    /** number of commits on master before "other" branches off. */
+    @Param({"10", "100"})
+    public int depth;
+    /** fraction of the files both master and "other" change. */
+    @Param({"0.1"})
+    public double density;
+
+    /** makes the repository each benchmark runs against. */
+    @Setup(Level.Trial)
+    public void makeRepository() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-bench").toFile();
+        System.setProperty("user.dir", _dir.getPath());
+        _g = new GitletControlSystem();
+        _random = new Random(0);
+        _lines = Math.max(1, size / LINE);
+        for (int i = 0; i < files; i += 1) {
+            ArrayList<String> lines = new ArrayList<>();
+            for (int k = 0; k < _lines; k += 1) {
+                lines.add(line());
+            }
+            writeFile(i, lines);
+        }
+        _g.add(".");
+        _g.commit("files", null);
+        int changes = Math.max(1, files / 10);
+        for (int d = 1; d < depth; d += 1) {
+            for (int k = 0; k < changes; k += 1) {
+                editLine(_random.nextInt(files), _random.nextInt(_lines));
+            }
+            _g.add(".");
+            _g.commit("history " + d, null);
+        }
+        _ids = new ArrayList<>();
+        for (Commit c = _g.head(); c != null;
+             c = _g.getCommit(c.parent())) {
+            _ids.add(c.sha1().substring(0, 8));
+        }
+        int both = Math.max(1, (int) (files * density));
+        _g.branch("other");
+        _g.checkoutBranch("other");
+        for (int i = 0; i < both; i += 1) {
+            editLine(i, _lines - 1);
+        }
+        _g.add(".");
+        _g.commit("other", null);
+        _g.checkoutBranch("master");
+        for (int i = 0; i < both; i += 1) {
+            editLine(i, 0);
+        }
+        _g.add(".");
+        _g.commit("master", null);
+        _base = _g.active();
+        _g.save();
+    }
+
+    /** deletes the repository. */
+    @TearDown(Level.Trial)
+    public void deleteRepository() {
+        GitletControlSystem.clear(_dir);
+        _dir.delete();
+    }
+
+    /** A working file changed before each call, for add and commit
+     * to stage. */
+    @State(Scope.Thread)
+    public static class Changed {
+        /** changes the next working file of REPO. */
+        @Setup(Level.Invocation)
+        public void change(GitletBenchmark repo) throws IOException {
+            _k = (_k + 1) % repo.files;
+            repo.editLine(_k, repo._random.nextInt(repo._lines));
+            _name = repo.name(_k);
+        }
+
+        /** index of the changed file. */
+        private int _k;
+        /** name of the changed file. */
+        private String _name;
+    }
+
+    /** master put back before each call at the commit it had before
+     * any merge. */
+    @State(Scope.Thread)
+    public static class Unmerged {
+        /** resets master of REPO to the commit it had before merging. */
+        @Setup(Level.Invocation)
+        public void unmerge(GitletBenchmark repo) throws IOException {
+            if (!repo._g.active().equals(repo._base)) {
+                repo._g.reset(repo._base);
+            }
+        }
+    }
+
+    /** stages the file CHANGED. */
+    @Benchmark
+    public void add(Changed changed) throws IOException {
+        _g.add(changed._name);
+        _g.save();
+    }
+
+    /** commits the file CHANGED. */
+    @Benchmark
+    public void commit(Changed changed) throws IOException {
+        _g.add(changed._name);
+        _g.commit("bench", null);
+        _g.save();
+    }
+
+    /** returns the status of the working directory. */
+    @Benchmark
+    public String status() {
+        return _g.status();
+    }
+
+    /** returns the whole history of master. */
+    @Benchmark
+    public StringWriter log() throws IOException {
+        StringWriter out = new StringWriter();
+        _g.log(out, LogLimits.NONE);
+        return out;
+    }
+
+    /** checks out master and "other" in turn. */
+    @Benchmark
+    public void checkoutBranch() throws IOException {
+        String active = _g.activeBranch().name();
+        _g.checkoutBranch(active.equals("master") ? "other" : "master");
+        _g.save();
+    }
+
+    /** merges "other" into master, from the commit master had before
+     * any merge, as UNMERGED ensures. */
+    @Benchmark
+    public void merge(Unmerged unmerged) throws IOException {
+        _g.merge("other");
+        _g.save();
+    }
+
+    /** loads a commit of the history by an abbreviated id. */
+    @Benchmark
+    public Commit getCommit() {
+        _nextId = (_nextId + 1) % _ids.size();
+        return _g.getCommit(_ids.get(_nextId));
+    }
+
+    /** returns the name of the K-th working file. */
+    private String name(int k) {
+        return String.format("d%02d/f%05d", k % 16, k);
+    }
+
+    /** returns a random line of text LINE bytes long. */
+    private String line() {
+        StringBuilder s = new StringBuilder(LINE);
+        for (int i = 0; i < LINE - 1; i += 1) {
+            s.append((char) ('a' + _random.nextInt(26)));
+        }
+        return s.append('\n').toString();
+    }
+
+    /** makes the K-th working file hold LINES. */
+    private void writeFile(int k, List<String> lines) {
+        File f = Utils.join(_dir, name(k));
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, String.join("", lines));
+    }
+
+    /** replaces line N of the K-th working file with a new one. */
+    private void editLine(int k, int n) throws IOException {
+        File f = Utils.join(_dir, name(k));
+        List<String> lines = new ArrayList<>(Diff.lines(
+                Utils.readContentsAsString(f)));
+        lines.set(n, line());
+        writeFile(k, lines);
+    }
+
+    /** the working directory of the repository. */
+    private File _dir;
+    /** the repository. */
+    private GitletControlSystem _g;
+    /** source of the synthetic file contents. */
+    private Random _random;
+    /** number of lines in each working file. */
+    private int _lines;
+    /** abbreviated ids of the commits of master's history. */
+    private List<String> _ids;
+    /** index in _ids of the commit getCommit loads. */
+    private int _nextId;
+    /** the head of master before any merge. */
+    private String _base;
+}